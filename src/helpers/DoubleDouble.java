@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package helpers;
+
+import java.math.BigDecimal;
+
+/**
+ * This class contains some static methods to do double-double
+ * arithmetic: a number is represented by the unevaluated sum of
+ * two doubles <code>hi + lo</code> with <code>|lo| &lt;= ulp(hi)/2</code>
+ * which gives about 32 significant decimal digits.
+ * <p>
+ * To avoid the allocation of objects the results are written
+ * into an array: a real number takes two fields (hi, lo), a complex
+ * number four fields (re hi, re lo, im hi, im lo)
+ *
+ * @author maxstrauch
+ */
+public class DoubleDouble {
+
+	/**
+	 * Constant to split a double into two halves with 26 bits
+	 * (2^27 + 1)
+	 */
+	private static final double SPLIT = 134217729.0;
+
+	/**
+	 * Adds two numbers: <code>r = a + b</code>
+	 */
+	public static void add(double ah, double al, double bh, double bl,
+			double[] r, int ri) {
+		double s = ah + bh;
+		double bb = s - ah;
+		double e = (ah - (s - bb)) + (bh - bb);
+		e += al + bl;
+		double h = s + e;
+		r[ri] = h;
+		r[ri+1] = e - (h - s);
+	}
+
+	/**
+	 * Multiplies two numbers: <code>r = a * b</code>
+	 */
+	public static void mul(double ah, double al, double bh, double bl,
+			double[] r, int ri) {
+		double p = ah * bh;
+		double t = SPLIT * ah;
+		double a1 = t - (t - ah), a2 = ah - a1;
+		t = SPLIT * bh;
+		double b1 = t - (t - bh), b2 = bh - b1;
+		double e = ((a1 * b1 - p) + a1 * b2 + a2 * b1) + a2 * b2;
+		e += ah * bl + al * bh;
+		double h = p + e;
+		r[ri] = h;
+		r[ri+1] = e - (h - p);
+	}
+
+	/**
+	 * Divides two numbers: <code>r = a / b</code>
+	 */
+	public static void div(double ah, double al, double bh, double bl,
+			double[] r, int ri) {
+		double q1 = ah / bh;
+		mul(q1, 0, bh, bl, r, ri);
+		add(ah, al, -r[ri], -r[ri+1], r, ri);
+		double q2 = r[ri] / bh;
+		double h = q1 + q2;
+		r[ri] = h;
+		r[ri+1] = q2 - (h - q1);
+	}
+
+	/**
+	 * Adds two complex numbers: <code>r = a + b</code>
+	 */
+	public static void cadd(double[] a, int ai, double[] b, int bi,
+			double[] r, int ri) {
+		double bih = b[bi+2], bil = b[bi+3];
+		add(a[ai], a[ai+1], b[bi], b[bi+1], r, ri);
+		add(a[ai+2], a[ai+3], bih, bil, r, ri+2);
+	}
+
+	/**
+	 * Subtracts two complex numbers: <code>r = a - b</code>
+	 */
+	public static void csub(double[] a, int ai, double[] b, int bi,
+			double[] r, int ri) {
+		double bih = b[bi+2], bil = b[bi+3];
+		add(a[ai], a[ai+1], -b[bi], -b[bi+1], r, ri);
+		add(a[ai+2], a[ai+3], -bih, -bil, r, ri+2);
+	}
+
+	/**
+	 * Multiplies two complex numbers: <code>r = a * b</code>
+	 *
+	 * @param t Temporary space for four numbers
+	 */
+	public static void cmul(double[] a, int ai, double[] b, int bi,
+			double[] r, int ri, double[] t) {
+		mul(a[ai], a[ai+1], b[bi], b[bi+1], t, 0);
+		mul(a[ai+2], a[ai+3], b[bi+2], b[bi+3], t, 2);
+		add(t[0], t[1], -t[2], -t[3], t, 4);
+		mul(a[ai], a[ai+1], b[bi+2], b[bi+3], t, 0);
+		mul(a[ai+2], a[ai+3], b[bi], b[bi+1], t, 2);
+		add(t[0], t[1], t[2], t[3], r, ri+2);
+		r[ri] = t[4];
+		r[ri+1] = t[5];
+	}
+
+	/**
+	 * Divides two complex numbers: <code>r = a / b</code>
+	 *
+	 * @param t Temporary space for five numbers
+	 */
+	public static void cdiv(double[] a, int ai, double[] b, int bi,
+			double[] r, int ri, double[] t) {
+		// Denominator |b|^2
+		mul(b[bi], b[bi+1], b[bi], b[bi+1], t, 0);
+		mul(b[bi+2], b[bi+3], b[bi+2], b[bi+3], t, 2);
+		add(t[0], t[1], t[2], t[3], t, 8);
+
+		// Re part: (a.re * b.re + a.im * b.im) / |b|^2
+		mul(a[ai], a[ai+1], b[bi], b[bi+1], t, 0);
+		mul(a[ai+2], a[ai+3], b[bi+2], b[bi+3], t, 2);
+		add(t[0], t[1], t[2], t[3], t, 4);
+
+		// Im part: (a.im * b.re - a.re * b.im) / |b|^2
+		mul(a[ai+2], a[ai+3], b[bi], b[bi+1], t, 0);
+		mul(a[ai], a[ai+1], b[bi+2], b[bi+3], t, 2);
+		add(t[0], t[1], -t[2], -t[3], t, 6);
+
+		div(t[4], t[5], t[8], t[9], r, ri);
+		div(t[6], t[7], t[8], t[9], r, ri+2);
+	}
+
+	/**
+	 * Converts a decimal number into a double-double number
+	 *
+	 * @param value The number
+	 * @param r The result (hi, lo)
+	 * @param ri The index of the result
+	 */
+	public static void valueOf(BigDecimal value, double[] r, int ri) {
+		double h = value.doubleValue();
+		r[ri] = h;
+		r[ri+1] = Double.isInfinite(h) ? 0 :
+			value.subtract(new BigDecimal(h)).doubleValue();
+	}
+
+	/**
+	 * Converts a double-double number into a decimal number
+	 *
+	 * @param hi The high part
+	 * @param lo The low part
+	 * @return The exact value of <code>hi + lo</code>
+	 */
+	public static BigDecimal toBigDecimal(double hi, double lo) {
+		return new BigDecimal(hi).add(new BigDecimal(lo));
+	}
+
+}
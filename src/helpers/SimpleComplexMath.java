@@ -75,24 +75,29 @@ public class SimpleComplexMath {
 	}
 
 	/**
-	 * Calculate the power: <code>a^b</code>
+	 * Calculate the power: <code>a^b</code>; the exponent is
+	 * rounded to an integer and exponents below 2 return the base.
+	 * The power is computed by repeated squaring, so only about
+	 * <code>2 log2(b)</code> multiplications are needed
 	 * 
 	 * @param a A complex number (base)
 	 * @param b A complex number (exponent)
 	 * @return The resulting complex number
 	 */
 	public static double[] pow(double[] a, double[] b) {
-		long times = Math.round(b[0]) - 1;
+		long n = Math.round(b[0]);
+		if (n <= 1)
+			return a;
 		
-		b = a.clone();
-		while (times > 0) {
-			a = new double[] {
-					a[0] * b[0] - a[1] * b[1],
-					a[0] * b[1] + b[0] * a[1]
-			};
-			times--;
+		double[] r = null, base = a;
+		while (true) {
+			if ((n & 1) != 0)
+				r = r == null ? base : mult(r, base);
+			n >>= 1;
+			if (n == 0)
+				return r;
+			base = mult(base, base);
 		}
-		return a;
 	}
 	
 	/**
@@ -25,6 +25,16 @@ import helpers.SimpleComplexMath;
  */
 public class AutoDerivateNewton {
 
+	/**
+	 * The maximal number of iterations per start value
+	 */
+	public static final int MAX_ITERATIONS = 1000;
+	
+	/**
+	 * The iteration stops if the progress is smaller than this
+	 */
+	public static final double EPSILON = 1e-8;
+	
 	/**
 	 * Simple automation to execute a formula with a value
 	 * for the variable x 
@@ -50,6 +60,20 @@ public class AutoDerivateNewton {
 	 * @return The root for the input
 	 */
 	public static double[] newton(String f, double[] start) {
+		double[] r = solve(f, start);
+		return new double[] {r[0], r[1]};
+	}
+	
+	/**
+	 * Runs the Newton method like {@link #newton(String, double[])}
+	 * and reports the number of iterations as well
+	 * 
+	 * @param f The function term
+	 * @param start The initial complex number
+	 * @return The root for the input on index 0 and 1 and the number
+	 * of iterations on index 2
+	 */
+	public static double[] solve(String f, double[] start) {
 		// Check if start value is null
 		if (Math.abs(start[0]) + Math.abs(start[1]) < 1e-8)
 			start = new double[] {0, 0};
@@ -59,7 +83,8 @@ public class AutoDerivateNewton {
 		
 		// Create the start element
 		double[] x0 = start.clone(), t;
-		for (int i = 0; i < 1000; i++) {
+		int i;
+		for (i = 0; i < MAX_ITERATIONS; i++) {
 			double[] r1 = f(f, new double[] {x0[0] + h, x0[1]});
 			double[] r2 = f(f, x0);
 			double[] down = {h, 0};
@@ -89,18 +114,19 @@ public class AutoDerivateNewton {
 			x0 = t;
 			
 			// If progress is smaller than 0,0...1 exit calculation
-			if (e < 1e-8) {
+			if (e < EPSILON) {
 				forcedTerm = false;
+				i++;
 				break;
 			}
 		}
 		
 		// If computation timeout reset result to NaN
 		if (forcedTerm)
-			return new double[] {Double.NaN, Double.NaN};
+			return new double[] {Double.NaN, Double.NaN, i};
 		
 		// Return the "real" result
-		return x0;
+		return new double[] {x0[0], x0[1], i};
 	}
 	
 }
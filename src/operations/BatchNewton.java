@@ -0,0 +1,191 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * Runs the Newton method (or another {@link Solver} which needs no
+ * 2nd derivation) with double precision for batches of pixels: all
+ * pixels of a batch are iterated together with
+ * {@link Formula#evalBatch(double[], double[], int, double[], double[])}
+ * and converged pixels are dropped from the batch, so the remaining
+ * ones stay packed. The results are exactly the same as the ones of
+ * {@link FormulaNewton}
+ *
+ * @author maxstrauch
+ */
+public class BatchNewton implements BatchPixelSolver {
+
+	/**
+	 * Maximal number of pixels iterated together
+	 */
+	public static final int CAPACITY = 256;
+
+	/**
+	 * The function
+	 */
+	private final Formula f;
+
+	/**
+	 * The viewport of the pixels
+	 */
+	private final Viewport viewport;
+
+	/**
+	 * The iteration scheme
+	 */
+	private final Solver solver;
+
+	/**
+	 * Computes single pixels
+	 */
+	private final FormulaNewton single;
+
+	/**
+	 * The current values of the pixels in the batch
+	 */
+	private final double[] re = new double[CAPACITY], im = new double[CAPACITY];
+
+	/**
+	 * The index of every pixel in the batch in the output
+	 */
+	private final int[] index = new int[CAPACITY];
+
+	/**
+	 * The disks in which the iteration may stop or <code>null</code>
+	 */
+	private ConvergenceDisks disks;
+
+	/**
+	 * Working memory
+	 */
+	private final double[] slots, values = new double[4 * CAPACITY],
+			value = new double[4], step = new double[2];
+
+	/**
+	 * Creates a new solver
+	 * 
+	 * @param f The function
+	 * @param viewport The viewport of the pixels
+	 * @param solver The iteration scheme
+	 */
+	public BatchNewton(Formula f, Viewport viewport, Solver solver) {
+		if (solver.needsSecondDerivation())
+			throw new IllegalArgumentException("The solver " + solver 
+					+ " is not supported");
+		
+		this.f = f;
+		this.viewport = viewport;
+		this.solver = solver;
+		single = new FormulaNewton(f, viewport, solver);
+		slots = new double[f.getBatchSlotSize(CAPACITY)];
+	}
+
+	/**
+	 * Sets the disks around the roots in which the Newton method
+	 * surely converges; pixels whose iterates enter a disk stop with
+	 * the root of the disk
+	 * 
+	 * @param disks The disks or <code>null</code>
+	 */
+	public void setDisks(ConvergenceDisks disks) {
+		if (disks != null && solver != Solver.NEWTON)
+			throw new IllegalArgumentException("The solver " + solver 
+					+ " has no convergence disks");
+		this.disks = disks;
+		single.setDisks(disks);
+	}
+
+	@Override
+	public void solve(double x, double y, double[] out) {
+		single.solve(x, y, out);
+	}
+
+	@Override
+	public void solve(double[] x, double[] y, int n, double[] out) {
+		for (int from = 0; from < n; from += CAPACITY)
+			solve(x, y, from, Math.min(n, from + CAPACITY), out);
+	}
+
+	/**
+	 * Computes a part of the pixels which fits into the batch
+	 */
+	private void solve(double[] x, double[] y, int from, int to, double[] out) {
+		int n = 0;
+		for (int p = from; p < to; p++, n++) {
+			re[n] = viewport.getRe(x[p]);
+			im[n] = viewport.getIm(y[p]);
+			index[n] = p;
+		}
+
+		int i;
+		for (i = 0; i < AutoDerivateNewton.MAX_ITERATIONS && n > 0; i++) {
+			f.evalBatch(re, im, n, slots, values);
+
+			// Keep the pixels which didn't converge yet
+			int kept = 0;
+			for (int j = 0; j < n; j++) {
+				value[0] = values[j];
+				value[1] = values[CAPACITY + j];
+				value[2] = values[2 * CAPACITY + j];
+				value[3] = values[3 * CAPACITY + j];
+				solver.step(value, step);
+				double tr = re[j] - step[0];
+				double ti = im[j] - step[1];
+				int o = index[j] * 3;
+				
+				if (Double.isNaN(tr) || Double.isNaN(ti) || 
+						Double.isInfinite(tr) || Double.isInfinite(ti)) {
+					out[o] = Double.NaN;
+					out[o+1] = Double.NaN;
+					out[o+2] = i;
+					continue;
+				}
+				
+				double e = Math.abs(tr - re[j]) + Math.abs(ti - im[j]);
+				if (e < AutoDerivateNewton.EPSILON) {
+					out[o] = tr;
+					out[o+1] = ti;
+					out[o+2] = i + 1;
+					continue;
+				}
+				
+				if (disks != null && e < disks.getMaxRadius()) {
+					int disk = disks.find(tr, ti);
+					if (disk >= 0) {
+						out[o] = disks.getRe(disk);
+						out[o+1] = disks.getIm(disk);
+						out[o+2] = i + 1;
+						continue;
+					}
+				}
+				
+				re[kept] = tr;
+				im[kept] = ti;
+				index[kept] = index[j];
+				kept++;
+			}
+			n = kept;
+		}
+
+		for (int j = 0; j < n; j++) {
+			int o = index[j] * 3;
+			out[o] = Double.NaN;
+			out[o+1] = Double.NaN;
+			out[o+2] = i;
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * A {@link PixelSolver} which computes many pixels at once more
+ * efficiently than one after another
+ *
+ * @author maxstrauch
+ */
+public interface BatchPixelSolver extends PixelSolver {
+
+	/**
+	 * Computes the roots for a batch of pixels
+	 * 
+	 * @param x The columns of the pixels
+	 * @param y The rows of the pixels
+	 * @param n The number of pixels
+	 * @param out The results (3 doubles per pixel): the root (re, im;
+	 * NaN if the method doesn't converge) and the number of iterations
+	 */
+	void solve(double[] x, double[] y, int n, double[] out);
+	
+}
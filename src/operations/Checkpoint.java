@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves the finished tiles of a running render periodically as
+ * render file, so a render which is killed can be resumed: a
+ * calculator created from the file computes only the missing pixels
+ * with the same settings. A cancelled render isn't saved anymore;
+ * its checkpoint should be deleted.
+ * <p>
+ * The checkpoint keeps its own copy of the result, into which the
+ * finished tiles are copied before each save; so the workers are
+ * never blocked and the file is always consistent. The file is
+ * replaced atomically and saving is delayed if it takes long
+ * compared to the interval, so it costs at most about
+ * <code>1/MAX_OVERHEAD</code> of the render time
+ *
+ * @author maxstrauch
+ */
+public class Checkpoint implements TileListener {
+
+	/**
+	 * The minimal ratio of the time between two saves and the time
+	 * of a save
+	 */
+	private static final int MAX_OVERHEAD = 50;
+
+	private final NewtonFractalCalculator task;
+
+	/**
+	 * The file to write
+	 */
+	private final Path path;
+
+	/**
+	 * The settings of the render
+	 */
+	private final RenderFile settings;
+
+	/**
+	 * The copy of the result which is saved
+	 */
+	private final RenderResult copy;
+
+	/**
+	 * The tiles finished since the last save; guarded by this
+	 */
+	private List<Tile> finished = new ArrayList<Tile>();
+
+	/**
+	 * Saves the checkpoint periodically
+	 */
+	private final Thread saver;
+
+	/**
+	 * Whether saving is stopped; guarded by the copy
+	 */
+	private boolean stopped;
+
+	/**
+	 * The last error while saving
+	 */
+	private volatile IOException error;
+
+	/**
+	 * Creates the checkpoint of a render and starts saving it
+	 * periodically; has to be created before the computation starts
+	 *
+	 * @param task The render
+	 * @param path The file to write (a render file)
+	 * @param interval The minimal time between two saves (ms)
+	 */
+	public Checkpoint(NewtonFractalCalculator task, Path path, final long interval) {
+		this.task = task;
+		this.path = path;
+		this.settings = task.toRenderFile();
+		this.copy = RenderResult.remap(settings.getResult(), settings.getViewport(),
+				settings.getViewport());
+		task.addTileListener(this);
+
+		saver = new Thread("checkpoint") {
+			@Override
+			public void run() {
+				long delay = interval;
+				try {
+					while (true) {
+						Thread.sleep(delay);
+						long time = System.currentTimeMillis();
+						try {
+							save();
+						} catch (IOException e) {
+							error = e;
+						}
+						delay = Math.max(interval, 
+								MAX_OVERHEAD * (System.currentTimeMillis() - time));
+					}
+				} catch (InterruptedException e) {
+					// Stopped
+				}
+			}
+		};
+		saver.setDaemon(true);
+		saver.start();
+	}
+
+	@Override
+	public synchronized void tileFinished(RenderResult result, Tile tile) {
+		finished.add(tile);
+	}
+
+	/**
+	 * Returns the tiles finished since the last call
+	 */
+	private synchronized List<Tile> takeFinished() {
+		List<Tile> tiles = finished;
+		finished = new ArrayList<Tile>();
+		return tiles;
+	}
+
+	/**
+	 * Saves all tiles finished so far; does nothing after
+	 * {@link #stop()} or when the render is cancelled
+	 *
+	 * @throws IOException If writing fails
+	 */
+	public void save() throws IOException {
+		List<Tile> tiles = takeFinished();
+		synchronized (copy) {
+			if (stopped || task.isCancelled())
+				return;
+
+			// The pixels of finished tiles don't change anymore
+			for (Tile tile : tiles)
+				copy.copy(task.getResult(), tile.getX(), tile.getY(), 
+						tile.getWidth(), tile.getHeight());
+			
+			Path temp = Paths.get(path + ".tmp");
+			new RenderFile(settings.getFormula(), settings.getViewport(),
+					settings.getSolver(), settings.getPrecision(),
+					settings.getMaxIterations(), settings.getEpsilon(), 
+					settings.getAntiAliasing(), settings.isShading(), copy).write(temp);
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	/**
+	 * Stops saving; the file is kept. Waits for a running save, so
+	 * the file is never written partly
+	 */
+	public void stop() {
+		task.removeTileListener(this);
+		synchronized (copy) {
+			stopped = true;
+			saver.interrupt();
+		}
+	}
+
+	/**
+	 * Stops saving and deletes the file; called when the render is
+	 * finished
+	 *
+	 * @throws IOException If the file can't be deleted
+	 */
+	public void delete() throws IOException {
+		stop();
+		Files.deleteIfExists(path);
+	}
+
+	/**
+	 * Returns the last error while saving
+	 *
+	 * @return The error or <code>null</code>
+	 */
+	public IOException getError() {
+		return error;
+	}
+
+}
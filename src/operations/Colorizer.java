@@ -0,0 +1,442 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Turns a {@link RenderResult} into an image. The color of a
+ * pixel only depends on its root id and iteration count, so all
+ * colors are precomputed into a lookup table and changing the
+ * palette, the shading or the tolerance to merge roots doesn't
+ * need a new computation of the fractal.
+ * <p>
+ * Without shading and anti-aliasing an image has at most the colors
+ * of the palette and black, so it is created with 8 bit indices
+ * into the palette ({@link BufferedImage#TYPE_BYTE_INDEXED}) instead
+ * of 32 bit colors and saved as PNG file with a palette
+ *
+ * @author maxstrauch
+ */
+public class Colorizer {
+
+	/**
+	 * Iteration counts above this value get the same shade
+	 */
+	public static final int SHADE_ITERATIONS = 255;
+
+	/**
+	 * Number of rows colorized by one parallel task
+	 */
+	private static final int ROWS_PER_TASK = 32;
+
+	/**
+	 * The pool used to colorize big images
+	 */
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	/**
+	 * The palette; roots which exceed the palette get the last color
+	 */
+	private final int[] palette;
+
+	/**
+	 * Darken pixels which need many iterations
+	 */
+	private final boolean shading;
+
+	/**
+	 * Roots closer than this are painted in the same color
+	 */
+	private final double tolerance;
+
+	/**
+	 * The cached lookup table and the registry size it was
+	 * built for
+	 */
+	private int[] lut;
+	private RootRegistry lutRegistry;
+	private int lutSize = -1;
+
+	/**
+	 * The indices into the color model by root id (built with the
+	 * lookup table)
+	 */
+	private byte[] indices;
+
+	/**
+	 * The palette with black as first color or <code>null</code> if
+	 * the colors don't fit into an indexed image
+	 */
+	private final IndexColorModel colorModel;
+
+	/**
+	 * Creates a colorizer with the default palette
+	 * {@link NewtonFractalCalculator#COLORS} without shading
+	 */
+	public Colorizer() {
+		this(NewtonFractalCalculator.COLORS, false, 1e-4);
+	}
+
+	/**
+	 * Creates a new colorizer
+	 *
+	 * @param palette The colors for the roots in order of their
+	 * discovery
+	 * @param shading <code>true</code> to darken the pixels by their
+	 * iteration count
+	 * @param tolerance Roots closer than this (sum of the absolute
+	 * differences of re and im part) get the same color
+	 */
+	public Colorizer(int[] palette, boolean shading, double tolerance) {
+		this.palette = palette.clone();
+		this.shading = shading;
+		this.tolerance = tolerance;
+
+		if (shading || palette.length > 255) {
+			colorModel = null;
+		} else {
+			// Unknown and not converging pixels are black
+			byte[] r = new byte[palette.length + 1], g = new byte[r.length], 
+					b = new byte[r.length];
+			for (int i = 0; i < palette.length; i++) {
+				r[i+1] = (byte) (palette[i] >> 16);
+				g[i+1] = (byte) (palette[i] >> 8);
+				b[i+1] = (byte) palette[i];
+			}
+			colorModel = new IndexColorModel(8, r.length, r, g, b);
+		}
+	}
+
+	/**
+	 * Returns a copy of this colorizer with shading switched
+	 * on or off
+	 */
+	public Colorizer withShading(boolean shading) {
+		return new Colorizer(palette, shading, tolerance);
+	}
+
+	/**
+	 * Returns a copy of this colorizer with another tolerance
+	 * to merge roots
+	 */
+	public Colorizer withTolerance(double tolerance) {
+		return new Colorizer(palette, shading, tolerance);
+	}
+
+	public boolean isShading() {
+		return shading;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Returns the (unshaded) color of a root
+	 *
+	 * @param registry The registry of the roots
+	 * @param id The id of the root
+	 * @return The RGB color
+	 */
+	public int getColor(RootRegistry registry, int id) {
+		return lut(registry)[id << 8];
+	}
+
+	/**
+	 * Colorizes a whole result in parallel
+	 *
+	 * @param result The result to colorize
+	 * @return A new image
+	 */
+	public BufferedImage colorize(RenderResult result) {
+		BufferedImage image = createImage(result, result.getWidth(), result.getHeight());
+		colorizeParallel(result, image);
+		return image;
+	}
+
+	/**
+	 * Creates an image for a result: indexed if all colors are in
+	 * the palette (no shading and no anti-aliasing samples)
+	 *
+	 * @param result The result to colorize
+	 * @param w Width of the image
+	 * @param h Height of the image
+	 * @return A new black image
+	 */
+	public BufferedImage createImage(RenderResult result, int w, int h) {
+		if (colorModel != null && result.getSamples() == null)
+			return new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+		return new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+	}
+
+	/**
+	 * Checks if a result can be colorized into an image: images with
+	 * 32 bit colors take all colors, indexed images only the ones of
+	 * their palette
+	 *
+	 * @param result The result to colorize
+	 * @param image The image
+	 * @return <code>false</code> if a new image has to be created
+	 */
+	public boolean canColorize(RenderResult result, BufferedImage image) {
+		if (image.getType() == BufferedImage.TYPE_INT_RGB)
+			return true;
+		return image.getColorModel().equals(colorModel) && result.getSamples() == null;
+	}
+
+	/**
+	 * Colorizes a whole result in parallel into an existing image
+	 *
+	 * @param result The result to colorize
+	 * @param image The target image with the size of the result
+	 */
+	public void colorizeParallel(RenderResult result, BufferedImage image) {
+		ColorizeEvent event = new ColorizeEvent();
+		event.begin();
+		POOL.invoke(new ColorizeTask(result, image, lut(result.getRegistry()),
+				indices(image), 0, result.getHeight()));
+		if (event.shouldCommit()) {
+			event.width = result.getWidth();
+			event.height = result.getHeight();
+			event.shading = shading;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Colorizes a rectangular area of a result into an image
+	 *
+	 * @param result The result to colorize
+	 * @param image The target image with the size of the result
+	 * @param x Left border of the area
+	 * @param y Top border of the area
+	 * @param w Width of the area
+	 * @param h Height of the area
+	 */
+	public void colorize(RenderResult result, BufferedImage image,
+			int x, int y, int w, int h) {
+		colorize(result, image.getRaster(), lut(result.getRegistry()), indices(image),
+				x, y, w, h, 0, 0);
+	}
+
+	/**
+	 * Colorizes a rectangular area of a result into an image of the
+	 * size of the area
+	 *
+	 * @param result The result to colorize
+	 * @param x Left border of the area
+	 * @param y Top border of the area
+	 * @param w Width of the area
+	 * @param h Height of the area
+	 * @return A new image
+	 */
+	public BufferedImage colorizeArea(RenderResult result, int x, int y, int w, int h) {
+		BufferedImage image = createImage(result, w, h);
+		colorize(result, image.getRaster(), lut(result.getRegistry()), indices(image),
+				x, y, w, h, x, y);
+		return image;
+	}
+
+	/**
+	 * Colorizes an area with a given lookup table; the raster starts
+	 * at the pixel (ox, oy) of the result
+	 *
+	 * @param indices The palette indices by root id for an indexed
+	 * raster or <code>null</code> to write colors
+	 */
+	private static void colorize(RenderResult result, WritableRaster raster,
+			int[] lut, byte[] indices, int x, int y, int w, int h, int ox, int oy) {
+		byte[] roots = result.getRootData();
+		short[] iterations = result.getIterationData();
+		SampleSet samples = result.getSamples();
+		int width = result.getWidth();
+		int[] row = new int[w];
+
+		if (indices != null) {
+			byte[] indexRow = new byte[w];
+			for (int j = y; j < y + h; j++) {
+				int offset = j * width + x;
+				for (int i = 0; i < w; i++)
+					indexRow[i] = iterations[offset + i] == RenderResult.UNKNOWN ? 0 
+							: indices[roots[offset + i] & 0xFF];
+				raster.setDataElements(x - ox, j - oy, w, 1, indexRow);
+			}
+			return;
+		}
+
+		for (int j = y; j < y + h; j++) {
+			int offset = j * width + x;
+			for (int i = 0; i < w; i++) {
+				int it = iterations[offset + i];
+				row[i] = it == RenderResult.UNKNOWN ? 0 :
+					lut[((roots[offset + i] & 0xFF) << 8) | Math.min(it, SHADE_ITERATIONS)];
+			}
+
+			// Supersampled pixels get the average color of their samples
+			if (samples != null) {
+				for (int k = samples.indexOf(offset); k < samples.size() &&
+						samples.getPixel(k) < offset + w; k++) {
+					int color = average(samples, k, lut);
+					if (color >= 0)
+						row[samples.getPixel(k) - offset] = color;
+				}
+			}
+
+			raster.setDataElements(x - ox, j - oy, w, 1, row);
+		}
+	}
+
+	/**
+	 * Returns the average color of the samples of a pixel
+	 *
+	 * @return The RGB color or <code>-1</code> if no sample
+	 * is known
+	 */
+	private static int average(SampleSet samples, int index, int[] lut) {
+		int r = 0, g = 0, b = 0, n = 0;
+		for (int s = 0; s < samples.getPattern().size(); s++) {
+			int it = samples.getIterations(index, s);
+			if (it == RenderResult.UNKNOWN)
+				continue;
+			int color = lut[(samples.getRoot(index, s) << 8) |
+					Math.min(it, SHADE_ITERATIONS)];
+			r += (color >> 16) & 0xFF;
+			g += (color >> 8) & 0xFF;
+			b += color & 0xFF;
+			n++;
+		}
+		if (n == 0)
+			return -1;
+		return ((r + n/2) / n << 16) | ((g + n/2) / n << 8) | (b + n/2) / n;
+	}
+
+	/**
+	 * Returns the palette indices by root id if the image is indexed
+	 *
+	 * @return The indices or <code>null</code> for images with 32
+	 * bit colors
+	 */
+	private synchronized byte[] indices(BufferedImage image) {
+		if (image.getType() == BufferedImage.TYPE_INT_RGB)
+			return null;
+		if (!image.getColorModel().equals(colorModel))
+			throw new IllegalArgumentException("The image has another palette");
+		return indices;
+	}
+
+	/**
+	 * Returns the lookup table for a registry: index
+	 * <code>(root id &lt;&lt; 8) | iterations</code>
+	 */
+	private synchronized int[] lut(RootRegistry registry) {
+		int size = registry.size();
+		boolean hit = lut != null && lutRegistry == registry && lutSize == size;
+		RenderMetrics.getInstance().colorTableLookup(hit);
+		if (hit)
+			return lut;
+
+		// Merge roots within the tolerance to one palette slot
+		double[][] roots = registry.toArray();
+		int[] slots = new int[roots.length];
+		int slotCnt = 0;
+		for (int i = 0; i < roots.length; i++) {
+			slots[i] = -1;
+			for (int j = 0; j < i; j++) {
+				if (Math.abs(roots[i][0]-roots[j][0]) +
+						Math.abs(roots[i][1]-roots[j][1]) < tolerance) {
+					slots[i] = slots[j];
+					break;
+				}
+			}
+			if (slots[i] < 0)
+				slots[i] = slotCnt++;
+		}
+
+		// Build the table
+		int[] table = new int[(RootRegistry.MAX_ROOTS + 1) << 8];
+		byte[] index = new byte[RootRegistry.MAX_ROOTS + 1];
+		for (int id = 1; id <= roots.length; id++) {
+			int slot = Math.min(slots[id-1], palette.length-1);
+			int color = palette[slot];
+			for (int it = 0; it <= SHADE_ITERATIONS; it++)
+				table[(id << 8) | it] = shading ? shade(color, it) : color;
+			index[id] = (byte) (slot + 1);
+		}
+
+		lut = table;
+		indices = index;
+		lutRegistry = registry;
+		lutSize = size;
+		return table;
+	}
+
+	/**
+	 * Darkens a color depending on the iteration count
+	 */
+	private static int shade(int color, int iterations) {
+		double f = 1.0 - 0.75 * Math.min(1.0, Math.log1p(iterations) /
+				Math.log1p(64));
+		int r = (int) (((color >> 16) & 0xFF) * f);
+		int g = (int) (((color >> 8) & 0xFF) * f);
+		int b = (int) ((color & 0xFF) * f);
+		return (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * Colorizes a range of rows and splits itself if the
+	 * range is too big
+	 */
+	private static class ColorizeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final RenderResult result;
+		private final BufferedImage image;
+		private final int[] lut;
+		private final byte[] indices;
+		private final int from, to;
+
+		ColorizeTask(RenderResult result, BufferedImage image, int[] lut,
+				byte[] indices, int from, int to) {
+			this.result = result;
+			this.image = image;
+			this.lut = lut;
+			this.indices = indices;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= ROWS_PER_TASK) {
+				colorize(result, image.getRaster(), lut, indices, 0, from,
+						result.getWidth(), to - from, 0, 0);
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new ColorizeTask(result, image, lut, indices, from, middle),
+					new ColorizeTask(result, image, lut, indices, middle, to));
+		}
+
+	}
+
+}
@@ -15,9 +15,20 @@
  */
 package operations;
 
+import helpers.SimpleComplexMath;
+
 /**
- * A very basic parser for mathematical expressions provided as
- * string or character array
+ * Parser for mathematical expressions with complex numbers: the
+ * operators {@link #OPS} with the usual precedence (<code>^</code>
+ * binds strongest and is right associative, all others are left
+ * associative), unary signs, brackets, decimal numbers and variables
+ * (single lower case letters). Whitespace is ignored.
+ * <p>
+ * The formula is read once from left to right: a tokenizer reads
+ * one token ahead and the operators are parsed by precedence
+ * climbing, so the time is linear in the length of the formula.
+ * Errors are reported as {@link FormulaSyntaxException} with the
+ * position of the offending character
  * 
  * @author maxstrauch
  */
@@ -26,201 +37,309 @@ public class ComplexMathParser {
 	/**
 	 * All supported operators
 	 */
-    public final static char[] OPS = {'+', '-', '/', '*', '^'};
-    
-    /**
-     * Evaluates a mathematical expression
-     * 
-     * @param leftSide The left side of the expression
-     * @param op The operator between the two sides
-     * @param rightSide The right side of the expression
-     * @param vars A map of variables and their values
-     * @return The result as a complex number
-     */
-    public static double[] eval(char[] leftSide, char op, char[] rightSide,
-    		Object[][] vars) {
-    	int p;
-		double[] leftResult = { 0.0, 0.0 }, rightResult = { 0.0, 0.0 };
-
-		// Work on the left side
-		leftSide = removeOuterBrackets(leftSide);
-		p = findOperator(leftSide);
-		if (p > -1) {
-			leftResult = eval(substring(leftSide, 0, p), leftSide[p],
-					substring(leftSide, p + 1, leftSide.length), vars);
-		} else {
-			leftResult = parseVar(leftSide, vars);
-		}
-
-		// Work on the right side
-		rightSide = removeOuterBrackets(rightSide);
-		p = findOperator(rightSide);
-		if (p > -1) {
-			rightResult = eval(substring(rightSide, 0, p), rightSide[p],
-					substring(rightSide, p + 1, rightSide.length), vars);
-		} else {
-			rightResult = parseVar(rightSide, vars);
+	public final static char[] OPS = {'+', '-', '/', '*', '^'};
+	
+	/**
+	 * The token types besides the operators and brackets
+	 */
+	private static final char NUMBER = '#', VARIABLE = '$', END = '\0';
+	
+	/**
+	 * The maximal nesting of brackets, signs and powers; deeper
+	 * formulas would overflow the stack of the parser or of the
+	 * code walking the tree
+	 */
+	public static final int MAX_DEPTH = 1000;
+	
+	/**
+	 * The formula
+	 */
+	private final char[] s;
+	
+	/**
+	 * The position after the current token
+	 */
+	private int pos;
+	
+	/**
+	 * The current token: its type, its first character and the value
+	 * of numbers and variables
+	 */
+	private char token;
+	private int start;
+	private double number;
+	private char name;
+	
+	/**
+	 * The allowed variables or <code>null</code> for all
+	 */
+	private final String variables;
+	
+	/**
+	 * The current nesting of brackets, signs and powers
+	 */
+	private int depth;
+	
+	private ComplexMathParser(char[] s, String variables) {
+		this.s = s;
+		this.variables = variables;
+		next();
+	}
+	
+	/**
+	 * Parses a mathematical expression into a tree, so it can be
+	 * evaluated many times without parsing it again
+	 * 
+	 * @param formula The expression
+	 * @return The root node of the expression tree
+	 * @throws FormulaSyntaxException If the expression is malformed
+	 */
+	public static ExpressionNode parse(char[] formula) {
+		return parse(formula, null);
+	}
+	
+	/**
+	 * Parses a mathematical expression of some variables into a tree
+	 * 
+	 * @param formula The expression
+	 * @param variables The allowed variables, e.g. "x"; other
+	 * letters are errors
+	 * @return The root node of the expression tree
+	 * @throws FormulaSyntaxException If the expression is malformed
+	 */
+	public static ExpressionNode parse(char[] formula, String variables) {
+		ComplexMathParser parser = new ComplexMathParser(formula, variables);
+		ExpressionNode root = parser.expression(0);
+		if (parser.token != END)
+			throw parser.unexpected();
+		return root;
+	}
+	
+	/**
+	 * Parses a mathematical expression into a tree
+	 * 
+	 * @param formula The expression
+	 * @return The root node of the expression tree
+	 * @throws FormulaSyntaxException If the expression is malformed
+	 */
+	public static ExpressionNode parse(String formula) {
+		return parse(formula.toCharArray());
+	}
+	
+	/**
+	 * Evaluates a mathematical expression
+	 * 
+	 * @param leftSide The left side of the expression
+	 * @param op The operator between the two sides
+	 * @param rightSide The right side of the expression
+	 * @param vars A map of variables and their values
+	 * @return The result as a complex number
+	 */
+	public static double[] eval(char[] leftSide, char op, char[] rightSide,
+			Object[][] vars) {
+		return eval(ExpressionNode.operator(op, parse(leftSide), parse(rightSide)), vars);
+	}
+	
+	/**
+	 * Evaluates an expression tree
+	 * 
+	 * @param n The root of the tree
+	 * @param vars A map of variables and their values
+	 * @return The result as a complex number; NaN if a part of it is
+	 * not defined
+	 */
+	public static double[] eval(ExpressionNode n, Object[][] vars) {
+		if (n.getOp() == ExpressionNode.CONST)
+			return new double[] { n.getRe(), n.getIm() };
+		
+		if (n.getOp() == ExpressionNode.VAR) {
+			for (Object[] var : vars)
+				if (((Character) var[0]) == n.getName())
+					return (double[]) var[1];
+			throw new IllegalArgumentException("Unknown variable: " + n.getName());
 		}
 		
-		// Check if some of the result is not defined
-		if (Double.isNaN(leftResult[0]) || Double.isNaN(leftResult[1])
-				|| Double.isNaN(rightResult[0]) || Double.isNaN(rightResult[1]))
+		double[] a = eval(n.getLeft(), vars), b = eval(n.getRight(), vars);
+		if (Double.isNaN(a[0]) || Double.isNaN(a[1])
+				|| Double.isNaN(b[0]) || Double.isNaN(b[1]))
 			return new double[] { Double.NaN, Double.NaN };
-
-	    // Calculate the result
-		if (op == '+') {
-			return new double[] { leftResult[0] + rightResult[0],
-					leftResult[1] + rightResult[1] };
-		} else if (op == '-') {
-			return new double[] { leftResult[0] - rightResult[0],
-					leftResult[1] - rightResult[1] };
-		} else if (op == '*') {
-			return new double[] {
-					leftResult[0] * rightResult[0] - leftResult[1]
-							* rightResult[1],
-					leftResult[0] * rightResult[1] + rightResult[0]
-							* leftResult[1], };
-		} else if (op == '/') {
-			double base = rightResult[0] * rightResult[0] + rightResult[1]
-					* rightResult[1];
-			return new double[] {
-					(rightResult[0] * leftResult[0] + rightResult[1]
-							* leftResult[1])
-							/ base,
-					(rightResult[0] * leftResult[1] - rightResult[1]
-							* leftResult[0])
-							/ base };
-		} else if (op == '^') {
-			long times = Math.round(rightResult[0]) - 1;
-			rightResult = leftResult.clone();
-			while (times > 0) {
-				leftResult = new double[] {
-						leftResult[0] * rightResult[0] - leftResult[1]
-								* rightResult[1],
-						leftResult[0] * rightResult[1] + rightResult[0]
-								* leftResult[1], };
-				times--;
+		
+		switch (n.getOp()) {
+		case '+':
+			return SimpleComplexMath.add(a, b);
+		case '-':
+			return SimpleComplexMath.sub(a, b);
+		case '*':
+			return SimpleComplexMath.mult(a, b);
+		case '/':
+			return SimpleComplexMath.div(a, b);
+		case '^':
+			return SimpleComplexMath.pow(a, b);
+		}
+		throw new UnsupportedOperationException("Operator unknown");
+	}
+	
+	/**
+	 * Parses an expression of operators with at least a precedence
+	 * 
+	 * @param min The minimal precedence
+	 * @return The expression
+	 */
+	private ExpressionNode expression(int min) {
+		ExpressionNode left = unary();
+		while (precedence(token) >= min) {
+			char op = token;
+			int at = start;
+			next();
+			
+			// The right operand of a left associative operator must
+			// not contain the same operator outside of brackets; the
+			// right associative power nests its right operand
+			int p = precedence(op);
+			if (op == '^') {
+				enter("Powers chained", at);
+				left = ExpressionNode.operator(op, left, expression(p));
+				depth--;
+			} else {
+				left = ExpressionNode.operator(op, left, expression(p + 1));
 			}
-			return leftResult;
 		}
-    	 
-    	 throw new UnsupportedOperationException("Operator unknown");
-    }
-    
-    /**
-     * Parses a terminal of a formula which is:
-     *  - a variable
-     *  - a natural number (e.g. 42)
-     *  - a floating point number (e.g. 42.42)
-     *  
-     * @param var The terminal to parse
-     * @param vars Map of input variables and their value
-     * @return The result represented as a complex number
-     */
-    private static double[] parseVar(char[] var, Object[][] vars) {
-    	if (var.length == 1 && Character.isLowerCase(var[0])) {
-    		for (Object[] varss : vars) {
-    			if (((char) varss[0]) == var[0]) {
-    				return (double[]) varss[1];
-    			}
-    		}
-    		throw new IllegalArgumentException("Unknown variable: " + var[0]);
-    	}
-    	
-    	double num = 0, fac = 1;
-    	int indexOfP = indexOf('.', var, 0);
-    	indexOfP = indexOfP < 0 ? var.length-1 : indexOfP;
-    	
-    	for (int i = 0; i < var.length; i++) {
-    		if (!Character.isDigit(var[i]))
-    			continue;
-    		
-    		for (int j = 0; j < Math.abs(indexOfP-i); j++)
-    			fac *= 10;
-    		
-			num += (((int) var[i])-48) * (indexOfP-i < 0 ? 1/fac : fac);
-			fac = 1;
+		return left;
+	}
+	
+	/**
+	 * Parses an operand with an optional sign; the sign binds weaker
+	 * than <code>^</code>, so <code>-x^2 = -(x^2)</code>
+	 */
+	private ExpressionNode unary() {
+		if (token == '-' || token == '+') {
+			char sign = token;
+			enter("Signs nested", start);
+			next();
+			ExpressionNode operand = expression(precedence('^'));
+			depth--;
+			return sign == '+' ? operand : ExpressionNode.operator('-', 
+					ExpressionNode.constant(0, 0), operand);
+		}
+		return primary();
+	}
+	
+	/**
+	 * Parses a number, a variable or an expression in brackets
+	 */
+	private ExpressionNode primary() {
+		ExpressionNode n;
+		switch (token) {
+		case NUMBER:
+			n = ExpressionNode.constant(number, 0);
+			break;
+		case VARIABLE:
+			n = ExpressionNode.variable(name);
+			break;
+		case '(':
+			int open = start;
+			enter("Brackets nested", open);
+			next();
+			n = expression(0);
+			depth--;
+			if (token != ')')
+				throw token == END ? new FormulaSyntaxException("Missing ')' for '('", open)
+						: unexpected();
+			break;
+		default:
+			throw unexpected();
 		}
-    	
-    	return new double[] { num, 0 };
-    }
-    
-    /**
-     * A {@link String#substring(int, int)} clone to work on
-     * character arrays. Without any error handling
-     */
-    private static char[] substring(char[] car, int start, int end) {
-    	char[] res = new char[end-start];
-    	System.arraycopy(car, start, res, 0, end-start);
-    	return res;
-    }
-    
-    /**
-     * Removes the outer brackets of a formula without
-     * breaking any other bracket rules
-     * 
-     * @param c The character array to work on (e.g. string)
-     * @return The modified character array
-     */
-    private static char[] removeOuterBrackets(char[] c) {
-    	if (c.length < 3)
-    		return c;
-    	
-    	int nc = indexOf(')', c, 0), no = indexOf('(', c, 1);
-    	while (c[0] == '(' && c[c.length-1] == ')' && no < nc) {
-    		System.arraycopy(c, 1, c = new char[c.length-2], 0, c.length);
-    		nc = indexOf(')', c, 0);
-    		no = indexOf('(', c, 1);
-    	}
-    	
-    	return c;
-    }
-    
-    /**
-     * Finds the first position of the next operator
-     * sign to work on with respect to the hierarchy of
-     * the mathematical operators
-     *  
-     * @param c The character array to search on (e.g. string)
-     * @return The position
-     */
-    private static int findOperator(char[] c) {
-    	boolean br = false;
-    	int indexOfLast = -1;
-    	int prio = OPS.length;
-    	
-    	for (int i = 0; i < c.length; i++) {
-    		if (c[i] == '(' || c[i] == ')')
-    			br = c[i] == '(';
-    		if (br)
-    			continue;
-    		for (int j = OPS.length-1; j >= 0; j--) {
-    			if (c[i] == OPS[j] && j < prio) {
-    				indexOfLast = i;
-    				prio = j;
-    			}
-    		}
-    	
-    	}
-    	
-    	return indexOfLast;
-    }
-    
-    /**
-     * Finds the index of the first occurrence of a 
-     * char in an array of chars
-     * 
-     * @param c Character to find
-     * @param cs Array of characters (e.g. string)
-     * @param offset Offset position to start from
-     * @return The index of the first occurrence or -1
-     * if character is not found
-     */
-    public static int indexOf(char c, char[] cs, int offset) {
-    	for (int i = offset; i < cs.length; i++)
-			if (cs[i] == c)
-				return i;
-    	return -1;
-    }
-    
+		next();
+		return n;
+	}
+	
+	/**
+	 * Counts a nested bracket, sign or power
+	 * 
+	 * @param what The nested construct
+	 * @param at The position of the construct
+	 * @throws FormulaSyntaxException If the formula is nested deeper
+	 * than {@link #MAX_DEPTH}
+	 */
+	private void enter(String what, int at) {
+		if (++depth > MAX_DEPTH)
+			throw new FormulaSyntaxException(what + " deeper than " + MAX_DEPTH, at);
+	}
+	
+	/**
+	 * Returns the precedence of an operator
+	 * 
+	 * @return The precedence or <code>-1</code> if the token is no
+	 * operator
+	 */
+	private static int precedence(char op) {
+		switch (op) {
+		case '+':
+		case '-':
+			return 0;
+		case '*':
+		case '/':
+			return 1;
+		case '^':
+			return 2;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Reads the next token
+	 */
+	private void next() {
+		while (pos < s.length && Character.isWhitespace(s[pos]))
+			pos++;
+		start = pos;
+		if (pos == s.length) {
+			token = END;
+			return;
+		}
+		
+		char c = s[pos];
+		if (isDigit(c) || c == '.') {
+			while (pos < s.length && isDigit(s[pos]))
+				pos++;
+			if (pos < s.length && s[pos] == '.') {
+				pos++;
+				while (pos < s.length && isDigit(s[pos]))
+					pos++;
+			}
+			if (pos - start == 1 && c == '.')
+				throw new FormulaSyntaxException("Bad number", start);
+			token = NUMBER;
+			number = Double.parseDouble(new String(s, start, pos - start));
+		} else if (c >= 'a' && c <= 'z') {
+			if (variables != null && variables.indexOf(c) < 0)
+				throw new FormulaSyntaxException("Unknown variable '" + c + "'", start);
+			pos++;
+			token = VARIABLE;
+			name = c;
+		} else if (c == '(' || c == ')' || precedence(c) >= 0) {
+			pos++;
+			token = c;
+		} else {
+			throw new FormulaSyntaxException("Unexpected character '" + c + "'", start);
+		}
+	}
+	
+	/**
+	 * Checks for the digits of numbers; only ASCII digits, since
+	 * other digits can't be parsed as double
+	 */
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	/**
+	 * Creates the error for the current token
+	 */
+	private FormulaSyntaxException unexpected() {
+		if (token == END)
+			return new FormulaSyntaxException("Unexpected end of formula", start);
+		return new FormulaSyntaxException("Unexpected '" + s[start] + "'", start);
+	}
+	
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.util.Arrays;
+
+/**
+ * Disks around the roots of a formula in which the Newton method
+ * provably converges to the root, so the iteration can stop as soon
+ * as an iterate enters one of them instead of running until the
+ * steps are below {@link AutoDerivateNewton#EPSILON}.
+ * <p>
+ * By Smale's gamma theorem the Newton method converges quadratically
+ * to a simple root <code>r</code> from every start value with
+ * <code>|x - r| &lt; (3 - sqrt(7)) / (2 gamma)</code>, where
+ * <code>gamma = sup |f^(k)(r) / (k! f'(r))|^(1/(k-1))</code> over
+ * <code>k &gt;= 2</code>. Cauchy's estimate bounds the Taylor
+ * coefficients by the maximum <code>M</code> of <code>|f|</code> on
+ * a circle of radius <code>rho</code> around the root, which gives
+ * <code>gamma &lt;= max(1, M / (rho |f'(r)|)) / rho</code>. The
+ * maximum is taken from {@link #SAMPLES} points of the circle and
+ * the radius is reduced by {@link #SAFETY}; a circle is only used if
+ * it winds once around zero (one root and no pole inside).
+ * Formulas with powers of variable exponents aren't analytic
+ * around their branch cuts and get no disks
+ *
+ * @author maxstrauch
+ */
+public class ConvergenceDisks {
+
+	/**
+	 * The radius of the gamma theorem times gamma
+	 */
+	private static final double GAMMA_RADIUS = (3 - Math.sqrt(7)) / 2;
+
+	/**
+	 * Number of points of a circle to find the maximum of |f|
+	 */
+	private static final int SAMPLES = 64;
+
+	/**
+	 * Reduction of the radius for the error of the sampled maximum
+	 */
+	private static final double SAFETY = 0.5;
+
+	/**
+	 * Number of circles tried per root (halving the radius each time)
+	 */
+	private static final int CIRCLES = 6;
+
+	/**
+	 * The roots with a disk and their squared radii
+	 */
+	private final double[] re, im, radius2;
+
+	/**
+	 * The largest radius
+	 */
+	private final double maxRadius;
+
+	private ConvergenceDisks(double[] re, double[] im, double[] radius) {
+		this.re = re;
+		this.im = im;
+		radius2 = new double[radius.length];
+		double max = 0;
+		for (int i = 0; i < radius.length; i++) {
+			radius2[i] = radius[i] * radius[i];
+			max = Math.max(max, radius[i]);
+		}
+		maxRadius = max;
+	}
+
+	/**
+	 * Computes the disks around known roots of a formula
+	 *
+	 * @param f The formula
+	 * @param roots The roots (re, im)
+	 * @return The disks or <code>null</code> if no disk is found
+	 */
+	public static ConvergenceDisks of(Formula f, double[][] roots) {
+		if (!f.isRational())
+			return null;
+
+		double[] slots = new double[f.getSlotSize()], value = new double[4];
+		double[] re = new double[roots.length], im = new double[roots.length],
+				radius = new double[roots.length];
+		int n = 0;
+		for (int i = 0; i < roots.length; i++) {
+			// The circles must not contain another root
+			double distance = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < roots.length; j++)
+				if (j != i)
+					distance = Math.min(distance, Math.hypot(roots[j][0] - roots[i][0], 
+							roots[j][1] - roots[i][1]));
+			if (Double.isInfinite(distance))
+				distance = Math.max(1, Math.hypot(roots[i][0], roots[i][1]));
+
+			f.eval(roots[i][0], roots[i][1], slots, value);
+			double derivation = Math.hypot(value[2], value[3]);
+			if (!(derivation > 0) || Double.isInfinite(derivation))
+				continue;
+
+			double best = 0;
+			for (int c = 1; c <= CIRCLES; c++) {
+				double rho = distance / (1 << c);
+				double max = maximum(f, roots[i], rho, slots, value);
+				if (!Double.isNaN(max))
+					best = Math.max(best, SAFETY * GAMMA_RADIUS * rho 
+							/ Math.max(1, max / (rho * derivation)));
+			}
+
+			if (best > 0) {
+				re[n] = roots[i][0];
+				im[n] = roots[i][1];
+				radius[n++] = best;
+			}
+		}
+
+		if (n == 0)
+			return null;
+		return new ConvergenceDisks(Arrays.copyOf(re, n), 
+				Arrays.copyOf(im, n), Arrays.copyOf(radius, n));
+	}
+
+	/**
+	 * Finds the maximum of |f| on a circle around a root
+	 *
+	 * @return The maximum or NaN if the circle doesn't wind once
+	 * around zero or is sampled too coarsely
+	 */
+	private static double maximum(Formula f, double[] root, double rho,
+			double[] slots, double[] value) {
+		double max = 0, winding = 0, last = 0;
+		for (int k = 0; k <= SAMPLES; k++) {
+			double t = 2 * Math.PI * k / SAMPLES;
+			f.eval(root[0] + rho * Math.cos(t), root[1] + rho * Math.sin(t), slots, value);
+			double abs = Math.hypot(value[0], value[1]);
+			if (!(abs > 0) || Double.isInfinite(abs))
+				return Double.NaN;
+			max = Math.max(max, abs);
+
+			// The change of the argument between two points must be
+			// small, otherwise a turn may be missed
+			double arg = Math.atan2(value[1], value[0]);
+			if (k > 0) {
+				double d = arg - last;
+				if (d > Math.PI)
+					d -= 2 * Math.PI;
+				else if (d < -Math.PI)
+					d += 2 * Math.PI;
+				if (Math.abs(d) > Math.PI / 2)
+					return Double.NaN;
+				winding += d;
+			}
+			last = arg;
+		}
+		return Math.abs(winding - 2 * Math.PI) < 1 ? max : Double.NaN;
+	}
+
+	/**
+	 * Returns the largest radius; iterates which moved farther in
+	 * their last step are usually still far from the roots, so the
+	 * disks are only searched after shorter steps
+	 */
+	public double getMaxRadius() {
+		return maxRadius;
+	}
+
+	/**
+	 * Finds the disk which contains a point
+	 *
+	 * @param x Re part of the point
+	 * @param y Im part of the point
+	 * @return The index of the disk or <code>-1</code>
+	 */
+	public int find(double x, double y) {
+		for (int i = 0; i < radius2.length; i++) {
+			double dr = x - re[i], di = y - im[i];
+			if (dr * dr + di * di < radius2[i])
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the re part of the root of a disk
+	 */
+	public double getRe(int disk) {
+		return re[disk];
+	}
+
+	/**
+	 * Returns the im part of the root of a disk
+	 */
+	public double getIm(int disk) {
+		return im[disk];
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import helpers.DoubleDouble;
+
+/**
+ * The Newton method with double-double precision (about 32
+ * decimal digits) for pixels which are too small to be told apart
+ * by double numbers. About ten times slower than {@link FormulaNewton}
+ * but still far faster than arbitrary precision arithmetic
+ * 
+ * @author maxstrauch
+ */
+public class DoubleDoubleNewton implements PixelSolver {
+
+	/**
+	 * The function
+	 */
+	private final Formula f;
+	
+	/**
+	 * The viewport of the pixels
+	 */
+	private final Viewport viewport;
+	
+	/**
+	 * Working memory
+	 */
+	private final double[] slots, temp = new double[Formula.TEMP_SIZE],
+			z = new double[4], value = new double[8], q = new double[4];
+	
+	/**
+	 * Creates a new solver
+	 * 
+	 * @param f The function
+	 * @param viewport The viewport of the pixels
+	 */
+	public DoubleDoubleNewton(Formula f, Viewport viewport) {
+		this.f = f;
+		this.viewport = viewport;
+		slots = new double[f.getSlotSize()];
+	}
+	
+	@Override
+	public void solve(double x, double y, double[] out) {
+		viewport.getPoint(x, y, z);
+		
+		int i;
+		for (i = 0; i < AutoDerivateNewton.MAX_ITERATIONS; i++) {
+			f.evalDD(z, slots, temp, value);
+			
+			// x - f(x) / f'(x)
+			DoubleDouble.cdiv(value, 0, value, 4, q, 0, temp);
+			if (Double.isNaN(q[0]) || Double.isNaN(q[2]) || 
+					Double.isInfinite(q[0]) || Double.isInfinite(q[2]))
+				break;
+			DoubleDouble.csub(z, 0, q, 0, z, 0);
+			
+			// The size of the step is the epsilon to exit calculation
+			if (Math.abs(q[0]) + Math.abs(q[2]) < AutoDerivateNewton.EPSILON) {
+				out[0] = z[0] + z[1];
+				out[1] = z[2] + z[3];
+				out[2] = i + 1;
+				return;
+			}
+		}
+		
+		out[0] = Double.NaN;
+		out[1] = Double.NaN;
+		out[2] = i;
+	}
+	
+}
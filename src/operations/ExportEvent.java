@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of saving a render as image or
+ * render file
+ *
+ * @author maxstrauch
+ */
+@Name("newtonfractal.Export")
+@Label("Export")
+@Category("Newton Fractal")
+class ExportEvent extends Event {
+
+	@Label("File")
+	String file;
+
+	@Label("Format")
+	String format;
+
+	@Label("Size")
+	@DataAmount
+	long size;
+
+}
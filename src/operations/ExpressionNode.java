@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * A node of a parsed formula: either one of the operators in
+ * {@link ComplexMathParser#OPS} with two operands, a constant or
+ * a variable
+ *
+ * @author maxstrauch
+ */
+public class ExpressionNode {
+
+	/**
+	 * Operator of a constant
+	 */
+	public static final char CONST = '#';
+
+	/**
+	 * Operator of a variable
+	 */
+	public static final char VAR = '$';
+
+	/**
+	 * The operator
+	 */
+	private final char op;
+
+	/**
+	 * The operands (only for operators)
+	 */
+	private final ExpressionNode left, right;
+
+	/**
+	 * The value of a constant
+	 */
+	private final double re, im;
+
+	/**
+	 * The name of a variable
+	 */
+	private final char name;
+
+	private ExpressionNode(char op, ExpressionNode left, ExpressionNode right,
+			double re, double im, char name) {
+		this.op = op;
+		this.left = left;
+		this.right = right;
+		this.re = re;
+		this.im = im;
+		this.name = name;
+	}
+
+	/**
+	 * Creates an operator node
+	 *
+	 * @param op One of {@link ComplexMathParser#OPS}
+	 * @param left The left operand
+	 * @param right The right operand
+	 * @return The node
+	 */
+	public static ExpressionNode operator(char op, ExpressionNode left,
+			ExpressionNode right) {
+		return new ExpressionNode(op, left, right, 0, 0, '\0');
+	}
+
+	/**
+	 * Creates a complex constant
+	 */
+	public static ExpressionNode constant(double re, double im) {
+		return new ExpressionNode(CONST, null, null, re, im, '\0');
+	}
+
+	/**
+	 * Creates a variable
+	 */
+	public static ExpressionNode variable(char name) {
+		return new ExpressionNode(VAR, null, null, 0, 0, name);
+	}
+
+	public char getOp() {
+		return op;
+	}
+
+	public ExpressionNode getLeft() {
+		return left;
+	}
+
+	public ExpressionNode getRight() {
+		return right;
+	}
+
+	public double getRe() {
+		return re;
+	}
+
+	public double getIm() {
+		return im;
+	}
+
+	public char getName() {
+		return name;
+	}
+
+	public boolean isConstant() {
+		return op == CONST;
+	}
+
+	@Override
+	public String toString() {
+		if (op == CONST)
+			return im == 0 ? String.valueOf(re) : "(" + re + "+" + im + "i)";
+		if (op == VAR)
+			return String.valueOf(name);
+		return "(" + left + op + right + ")";
+	}
+
+}
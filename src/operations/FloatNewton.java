@@ -0,0 +1,280 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.util.Arrays;
+
+/**
+ * Runs the Newton method with mixed precision for batches of pixels:
+ * the pixels are iterated with single precision until they are close
+ * to a root and the last iteration is done with double precision, so
+ * the roots are as precise as with {@link BatchNewton}. Pixels whose
+ * single precision result is ambiguous are computed again with
+ * double precision: pixels which diverge, pixels which end at
+ * another root than one of their four neighbors (the pixels on the
+ * borders between the roots, where rounding errors can change the
+ * root) and pixels with a neighbor outside of the batch, whose border
+ * can't be checked.
+ * <p>
+ * Pixels which don't converge with single precision are taken as
+ * not converging unless a neighbor converges. The iteration counts
+ * may differ by one from double precision
+ *
+ * @author maxstrauch
+ */
+public class FloatNewton implements BatchPixelSolver {
+
+	/**
+	 * The single precision iteration stops when the step is smaller
+	 * than this (relative to the value)
+	 */
+	private static final float FLOAT_EPSILON = 1e-4f;
+
+	/**
+	 * The largest double precision step which is accepted after the
+	 * single precision iteration; small enough that the result is
+	 * the same root as with double precision
+	 */
+	private static final double POLISH_STEP = RootRegistry.TOLERANCE / 4;
+
+	/**
+	 * The function
+	 */
+	private final Formula f;
+
+	/**
+	 * The viewport of the pixels
+	 */
+	private final Viewport viewport;
+
+	/**
+	 * Computes with double precision
+	 */
+	private final BatchNewton exact;
+
+	/**
+	 * The current values of the pixels in the batch
+	 */
+	private final float[] re = new float[BatchNewton.CAPACITY], 
+			im = new float[BatchNewton.CAPACITY];
+
+	/**
+	 * The index of every pixel in the batch in the output
+	 */
+	private final int[] index = new int[BatchNewton.CAPACITY];
+
+	/**
+	 * Working memory
+	 */
+	private final float[] slots, values = new float[4 * BatchNewton.CAPACITY];
+	private final double[] value = new double[4], step = new double[2];
+	private final double[] exactRe = new double[BatchNewton.CAPACITY],
+			exactIm = new double[BatchNewton.CAPACITY], exactSlots,
+			exactValues = new double[4 * BatchNewton.CAPACITY];
+
+	/**
+	 * The pixels close to a root (value and iterations) and the
+	 * ambiguous pixels; grown as needed
+	 */
+	private double[] closeRe = new double[0], closeIm = new double[0];
+	private int[] closeIterations = new int[0], closeIndex = new int[0];
+	private boolean[] ambiguous = new boolean[0];
+
+	/**
+	 * Creates a new solver
+	 * 
+	 * @param f The function
+	 * @param viewport The viewport of the pixels
+	 */
+	public FloatNewton(Formula f, Viewport viewport) {
+		this.f = f;
+		this.viewport = viewport;
+		exact = new BatchNewton(f, viewport, Solver.NEWTON);
+		slots = new float[f.getBatchSlotSize(BatchNewton.CAPACITY)];
+		exactSlots = new double[f.getBatchSlotSize(BatchNewton.CAPACITY)];
+	}
+
+	@Override
+	public void solve(double x, double y, double[] out) {
+		exact.solve(x, y, out);
+	}
+
+	@Override
+	public void solve(double[] x, double[] y, int n, double[] out) {
+		if (ambiguous.length < n) {
+			closeRe = new double[n];
+			closeIm = new double[n];
+			closeIterations = new int[n];
+			closeIndex = new int[n];
+			ambiguous = new boolean[n];
+		}
+		Arrays.fill(ambiguous, 0, n, false);
+		Arrays.fill(out, 0, 3 * n, Double.NaN);
+
+		// Iterate with single precision and finish with double
+		// precision
+		int close = 0;
+		for (int from = 0; from < n; from += BatchNewton.CAPACITY)
+			close = iterate(x, y, from, Math.min(n, from + BatchNewton.CAPACITY), close, out);
+		for (int from = 0; from < close; from += BatchNewton.CAPACITY)
+			polish(from, Math.min(close, from + BatchNewton.CAPACITY), out);
+
+		// Pixels which converge to another root than a neighbor are
+		// ambiguous; so are pixels with a neighbor outside of the
+		// batch since their border can't be checked
+		int above = 0, below = 0;
+		for (int p = 0; p < n; p++) {
+			// The pixels are sorted by rows and columns, so the pixels
+			// above and below follow the ones of the previous pixel
+			while (above < n && (y[above] < y[p] - 1 || (y[above] == y[p] - 1 && x[above] < x[p])))
+				above++;
+			while (below < n && (y[below] < y[p] + 1 || (y[below] == y[p] + 1 && x[below] < x[p])))
+				below++;
+			if (Double.isNaN(out[3 * p]) && out[3 * p + 2] < AutoDerivateNewton.MAX_ITERATIONS)
+				ambiguous[p] = true;
+			if (p == 0 || y[p - 1] != y[p] || x[p - 1] != x[p] - 1
+					|| above >= n || y[above] != y[p] - 1 || x[above] != x[p])
+				ambiguous[p] = true;
+			if (p + 1 < n && y[p + 1] == y[p] && x[p + 1] == x[p] + 1)
+				compare(p, p + 1, out);
+			else
+				ambiguous[p] = true;
+			if (below < n && y[below] == y[p] + 1 && x[below] == x[p])
+				compare(p, below, out);
+			else
+				ambiguous[p] = true;
+		}
+
+		// Compute the ambiguous pixels again with double precision
+		int m = 0;
+		for (int p = 0; p < n; p++) {
+			if (ambiguous[p]) {
+				closeRe[m] = x[p];
+				closeIm[m] = y[p];
+				closeIndex[m++] = p;
+			}
+		}
+		double[] exactOut = new double[3 * m];
+		exact.solve(closeRe, closeIm, m, exactOut);
+		for (int i = 0; i < m; i++)
+			System.arraycopy(exactOut, 3 * i, out, 3 * closeIndex[i], 3);
+	}
+
+	/**
+	 * Iterates a part of the pixels which fits into the batch with
+	 * single precision; pixels close to a root are added to the
+	 * pixels to refine, all others are marked as ambiguous
+	 *
+	 * @return The new number of pixels to refine
+	 */
+	private int iterate(double[] x, double[] y, int from, int to, int close, 
+			double[] out) {
+		int c = BatchNewton.CAPACITY, n = 0;
+		for (int p = from; p < to; p++, n++) {
+			re[n] = (float) viewport.getRe(x[p]);
+			im[n] = (float) viewport.getIm(y[p]);
+			index[n] = p;
+		}
+
+		for (int i = 0; i < AutoDerivateNewton.MAX_ITERATIONS && n > 0; i++) {
+			f.evalBatch(re, im, n, slots, values);
+
+			// Keep the pixels which aren't close to a root yet
+			int kept = 0;
+			for (int j = 0; j < n; j++) {
+				// The Newton step f / f'
+				float vr = values[j], vi = values[c + j];
+				float dr = values[2 * c + j], di = values[3 * c + j];
+				float base = dr * dr + di * di;
+				float sr = (dr * vr + di * vi) / base, si = (dr * vi - di * vr) / base;
+				float tr = re[j] - sr;
+				float ti = im[j] - si;
+
+				if (Float.isNaN(tr) || Float.isNaN(ti) || 
+						Float.isInfinite(tr) || Float.isInfinite(ti)) {
+					ambiguous[index[j]] = true;
+					continue;
+				}
+
+				if (Math.abs(tr - re[j]) + Math.abs(ti - im[j]) 
+						< FLOAT_EPSILON * (1 + Math.abs(tr) + Math.abs(ti))) {
+					closeRe[close] = tr;
+					closeIm[close] = ti;
+					closeIterations[close] = i + 1;
+					closeIndex[close++] = index[j];
+					continue;
+				}
+
+				re[kept] = tr;
+				im[kept] = ti;
+				index[kept] = index[j];
+				kept++;
+			}
+			n = kept;
+		}
+
+		// Not converged; the same with double precision unless a
+		// neighbor converges
+		for (int j = 0; j < n; j++)
+			out[3 * index[j] + 2] = AutoDerivateNewton.MAX_ITERATIONS;
+		return close;
+	}
+
+	/**
+	 * Does one more iteration with double precision for a part of
+	 * the pixels close to a root which fits into the batch; the step
+	 * of single precision is precise enough to find the root, so this
+	 * step is as precise as the last step with double precision. Pixels
+	 * with a larger step (slow convergence at multiple roots) are
+	 * ambiguous
+	 */
+	private void polish(int from, int to, double[] out) {
+		int c = BatchNewton.CAPACITY, n = to - from;
+		System.arraycopy(closeRe, from, exactRe, 0, n);
+		System.arraycopy(closeIm, from, exactIm, 0, n);
+		f.evalBatch(exactRe, exactIm, n, exactSlots, exactValues);
+		for (int j = 0; j < n; j++) {
+			value[0] = exactValues[j];
+			value[1] = exactValues[c + j];
+			value[2] = exactValues[2 * c + j];
+			value[3] = exactValues[3 * c + j];
+			Solver.NEWTON.step(value, step);
+			int o = closeIndex[from + j] * 3;
+			if (Math.abs(step[0]) + Math.abs(step[1]) < POLISH_STEP) {
+				out[o] = exactRe[j] - step[0];
+				out[o+1] = exactIm[j] - step[1];
+				out[o+2] = closeIterations[from + j] + 1;
+			} else {
+				ambiguous[closeIndex[from + j]] = true;
+			}
+		}
+	}
+
+	/**
+	 * Marks two neighbors as ambiguous if they converge to different
+	 * roots
+	 */
+	private void compare(int p, int q, double[] out) {
+		boolean converged = !Double.isNaN(out[3 * p]);
+		if (converged != !Double.isNaN(out[3 * q]) || (converged && 
+				Math.abs(out[3 * p] - out[3 * q]) + Math.abs(out[3 * p + 1] - out[3 * q + 1])
+				>= RootRegistry.TOLERANCE)) {
+			ambiguous[p] = true;
+			ambiguous[q] = true;
+		}
+	}
+
+}
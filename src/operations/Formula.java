@@ -0,0 +1,999 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import helpers.DoubleDouble;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A formula compiled into a flat list of instructions. Every
+ * instruction stores its value into its own slot; the last slot
+ * is the value of the formula. Next to the value the 1st
+ * derivation is calculated on the fly (forward mode automatic
+ * differentiation), so the Newton method needs no numeric
+ * derivation. Formulas are simplified by the {@link FormulaOptimizer}
+ * and equal subexpressions are computed only once.
+ * <p>
+ * The formula can be evaluated with double or double-double
+ * precision and in the perturbation form which calculates the
+ * difference to the values of a reference point. The caller
+ * provides the memory for the slots, so a compiled formula can be
+ * shared between threads
+ *
+ * @author maxstrauch
+ */
+public class Formula {
+
+	/**
+	 * The instruction codes
+	 */
+	static final int CONST = 0, VAR = 1, ADD = 2, SUB = 3, MUL = 4,
+			DIV = 5, POW = 6;
+
+	/**
+	 * Size of the temporary space needed by the double-double
+	 * evaluation
+	 */
+	static final int TEMP_SIZE = 14;
+
+	/**
+	 * Number of compiled formulas kept in the cache
+	 */
+	private static final int CACHE_SIZE = 64;
+
+	/**
+	 * The recently compiled formulas (least recently used first);
+	 * a compiled formula is immutable, so it can be shared
+	 */
+	private static final Map<String, Formula> CACHE = new LinkedHashMap<String, Formula>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Formula> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * The source of the formula
+	 */
+	private final String source;
+
+	/**
+	 * The instruction codes and the slots of their operands
+	 */
+	final int[] ops, a, b;
+
+	/**
+	 * The values of the constants
+	 */
+	final double[] cRe, cIm;
+
+	/**
+	 * Number of instructions
+	 */
+	final int count;
+
+	/**
+	 * Compiles a formula; recently compiled formulas are taken
+	 * from a cache
+	 *
+	 * @param formula The formula with the variable <code>x</code>
+	 * @return The compiled formula
+	 */
+	public static Formula compile(String formula) {
+		CompileEvent event = new CompileEvent();
+		event.begin();
+
+		Formula f;
+		synchronized (CACHE) {
+			f = CACHE.get(formula);
+		}
+		boolean cached = f != null;
+
+		if (f == null) {
+			f = new Formula(formula, FormulaOptimizer.optimize(
+					ComplexMathParser.parse(formula.toCharArray(), "x")));
+			synchronized (CACHE) {
+				CACHE.put(formula, f);
+			}
+		}
+
+		if (event.shouldCommit()) {
+			event.formula = formula;
+			event.instructions = f.count;
+			event.cached = cached;
+			event.commit();
+		}
+		RenderMetrics.getInstance().formulaCacheLookup(cached);
+		return f;
+	}
+
+	/**
+	 * Compiles an expression tree
+	 *
+	 * @param source The source of the formula
+	 * @param root The expression tree
+	 */
+	Formula(String source, ExpressionNode root) {
+		this.source = source;
+
+		List<int[]> code = new ArrayList<int[]>();
+		List<double[]> constants = new ArrayList<double[]>();
+		emit(root, code, constants, new IdentityHashMap<ExpressionNode, Integer>(),
+				new HashMap<List<Object>, Integer>());
+
+		count = code.size();
+		ops = new int[count];
+		a = new int[count];
+		b = new int[count];
+		cRe = new double[count];
+		cIm = new double[count];
+		for (int i = 0; i < count; i++) {
+			int[] c = code.get(i);
+			ops[i] = c[0];
+			a[i] = c[1];
+			b[i] = c[2];
+			cRe[i] = constants.get(i)[0];
+			cIm[i] = constants.get(i)[1];
+		}
+	}
+
+	/**
+	 * Emits the instructions of a node and its operands; a node
+	 * which is equal to an already emitted one (same operation on
+	 * the same slots) gets the slot of that one
+	 *
+	 * @param done The slots of the nodes already emitted
+	 * @param values The slots by operation and operands
+	 * @return The slot with the value of the node
+	 */
+	private static int emit(ExpressionNode n, List<int[]> code,
+			List<double[]> constants, Map<ExpressionNode, Integer> done,
+			Map<List<Object>, Integer> values) {
+		// Long sums and products are nested on the left side, so the
+		// left operands are walked in a loop instead of recursively
+		List<ExpressionNode> spine = new ArrayList<ExpressionNode>();
+		Integer slot;
+		while ((slot = done.get(n)) == null && n.getLeft() != null) {
+			spine.add(n);
+			n = n.getLeft();
+		}
+
+		if (slot == null)
+			slot = emit(n, -1, code, constants, done, values);
+		for (int i = spine.size() - 1; i >= 0; i--)
+			slot = emit(spine.get(i), slot, code, constants, done, values);
+		return slot;
+	}
+
+	/**
+	 * Emits the instruction of a node whose left operand is already
+	 * emitted
+	 *
+	 * @param left The slot of the left operand (<code>-1</code> for
+	 * constants and variables)
+	 * @return The slot with the value of the node
+	 */
+	private static int emit(ExpressionNode n, int left, List<int[]> code,
+			List<double[]> constants, Map<ExpressionNode, Integer> done,
+			Map<List<Object>, Integer> values) {
+		int op, right = -1;
+		switch (n.getOp()) {
+		case ExpressionNode.CONST:
+			op = CONST;
+			break;
+		case ExpressionNode.VAR:
+			if (n.getName() != 'x')
+				throw new IllegalArgumentException("Unknown variable: " + n.getName());
+			op = VAR;
+			break;
+		default:
+			op = n.getOp() == '+' ? ADD : n.getOp() == '-' ? SUB :
+				n.getOp() == '*' ? MUL : n.getOp() == '/' ? DIV : POW;
+			right = emit(n.getRight(), code, constants, done, values);
+
+			// Addition and multiplication are commutative
+			if ((op == ADD || op == MUL) && right < left) {
+				int t = left;
+				left = right;
+				right = t;
+			}
+		}
+
+		List<Object> key = Arrays.<Object>asList(op, left, right, n.getRe(), n.getIm());
+		Integer slot = values.get(key);
+		if (slot == null) {
+			code.add(new int[] { op, left, right });
+			constants.add(new double[] { n.getRe(), n.getIm() });
+			slot = code.size() - 1;
+			values.put(key, slot);
+		}
+		done.put(n, slot);
+		return slot;
+	}
+
+	/**
+	 * Returns the number of doubles needed for the slots
+	 *
+	 * @return The size of the array to pass as slots
+	 */
+	public int getSlotSize() {
+		return count * 8;
+	}
+
+	/**
+	 * Returns the number of instructions
+	 */
+	public int getInstructionCount() {
+		return count;
+	}
+
+	/**
+	 * Checks if all constants are real numbers: the function then
+	 * maps conjugated numbers to conjugated values, so its fractal
+	 * is symmetric to the real axis
+	 */
+	public boolean isReal() {
+		for (int i = 0; i < count; i++)
+			if (ops[i] == CONST && cIm[i] != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Checks if the formula is a rational function, i.e. it has no
+	 * powers with a variable exponent (which have branch cuts)
+	 */
+	public boolean isRational() {
+		for (int i = 0; i < count; i++)
+			if (ops[i] == POW)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns whether the function is even or odd, as far as it can
+	 * be told from the instructions (powers with a variable exponent
+	 * are never even or odd)
+	 *
+	 * @return <code>1</code> if f(-x) = f(x), <code>-1</code> if
+	 * f(-x) = -f(x) and <code>0</code> otherwise
+	 */
+	public int getParity() {
+		int[] parity = new int[count];
+		for (int i = 0; i < count; i++) {
+			switch (ops[i]) {
+			case CONST:
+				parity[i] = 1;
+				break;
+			case VAR:
+				parity[i] = -1;
+				break;
+			case ADD:
+			case SUB:
+				// Adding zero keeps the parity of the other operand
+				if (isZero(a[i]))
+					parity[i] = parity[b[i]];
+				else if (isZero(b[i]) || parity[a[i]] == parity[b[i]])
+					parity[i] = parity[a[i]];
+				break;
+			case MUL:
+			case DIV:
+				parity[i] = parity[a[i]] * parity[b[i]];
+				break;
+			}
+		}
+		return parity[count - 1];
+	}
+
+	/**
+	 * Checks if a slot is the constant zero
+	 */
+	private boolean isZero(int slot) {
+		return ops[slot] == CONST && cRe[slot] == 0 && cIm[slot] == 0;
+	}
+
+	/**
+	 * Evaluates the formula and its 1st derivation with double
+	 * precision
+	 *
+	 * @param re Re part of x
+	 * @param im Im part of x
+	 * @param s Slot memory of {@link #getSlotSize()} doubles
+	 * @param out The result: f(x) (re, im) and f'(x) (re, im)
+	 */
+	public void eval(double re, double im, double[] s, double[] out) {
+		for (int i = 0; i < count; i++) {
+			int o = i * 4, ao = a[i] * 4, bo = b[i] * 4;
+			switch (ops[i]) {
+			case CONST:
+				s[o] = cRe[i];
+				s[o+1] = cIm[i];
+				s[o+2] = 0;
+				s[o+3] = 0;
+				break;
+			case VAR:
+				s[o] = re;
+				s[o+1] = im;
+				s[o+2] = 1;
+				s[o+3] = 0;
+				break;
+			case ADD:
+				for (int k = 0; k < 4; k++)
+					s[o+k] = s[ao+k] + s[bo+k];
+				break;
+			case SUB:
+				for (int k = 0; k < 4; k++)
+					s[o+k] = s[ao+k] - s[bo+k];
+				break;
+			case MUL: {
+				double ar = s[ao], ai = s[ao+1], br = s[bo], bi = s[bo+1];
+				double dar = s[ao+2], dai = s[ao+3], dbr = s[bo+2], dbi = s[bo+3];
+				s[o] = ar * br - ai * bi;
+				s[o+1] = ar * bi + ai * br;
+				s[o+2] = dar * br - dai * bi + ar * dbr - ai * dbi;
+				s[o+3] = dar * bi + dai * br + ar * dbi + ai * dbr;
+				break;
+			}
+			case DIV: {
+				// v = a / b and v' = (a' - v * b') / b
+				div(s[ao], s[ao+1], s[bo], s[bo+1], s, o);
+				double vr = s[o], vi = s[o+1], dbr = s[bo+2], dbi = s[bo+3];
+				div(s[ao+2] - (vr * dbr - vi * dbi), s[ao+3] - (vr * dbi + vi * dbr),
+						s[bo], s[bo+1], s, o+2);
+				break;
+			}
+			case POW: {
+				long n = Math.round(s[bo]);
+				if (n <= 1) {
+					for (int k = 0; k < 4; k++)
+						s[o+k] = s[ao+k];
+					break;
+				}
+
+				// p = a^(n-1), v = p * a and v' = n * p * a'
+				double ar = s[ao], ai = s[ao+1];
+				pow(ar, ai, n - 1, s, o);
+				double pr = s[o], pi = s[o+1];
+				double dar = s[ao+2], dai = s[ao+3];
+				s[o] = pr * ar - pi * ai;
+				s[o+1] = pr * ai + pi * ar;
+				s[o+2] = n * (pr * dar - pi * dai);
+				s[o+3] = n * (pr * dai + pi * dar);
+				break;
+			}
+			}
+		}
+
+		int r = (count - 1) * 4;
+		out[0] = s[r];
+		out[1] = s[r+1];
+		out[2] = s[r+2];
+		out[3] = s[r+3];
+	}
+
+	/**
+	 * Returns the number of doubles needed for the slots of
+	 * {@link #evalBatch(double[], double[], int, double[], double[])}
+	 *
+	 * @param capacity The maximal number of values of a batch
+	 * @return The size of the array to pass as slots
+	 */
+	public int getBatchSlotSize(int capacity) {
+		return count * 4 * capacity;
+	}
+
+	/**
+	 * Evaluates the formula and its 1st derivation with double
+	 * precision for a batch of values. Every instruction is executed
+	 * for all values before the next one, so the costs of the dispatch
+	 * are shared by the whole batch and the loops over the values are
+	 * simple enough for the JIT compiler. The results are exactly the
+	 * same as the ones of {@link #eval(double, double, double[], double[])}.
+	 * <p>
+	 * The slots are stored as structure of arrays: component
+	 * <code>k</code> (re, im, re', im') of slot <code>i</code> of value
+	 * <code>j</code> is on index <code>(i * 4 + k) * capacity + j</code>
+	 *
+	 * @param re Re parts of x; the length is the capacity of the batch
+	 * @param im Im parts of x
+	 * @param n Number of values
+	 * @param s Slot memory of {@link #getBatchSlotSize(int)} doubles
+	 * @param out The results as four blocks of capacity values: the re
+	 * and im parts of f(x) and the re and im parts of f'(x)
+	 */
+	public void evalBatch(double[] re, double[] im, int n, double[] s, double[] out) {
+		int c = re.length;
+		for (int i = 0; i < count; i++) {
+			int o = i * 4 * c, ao = a[i] * 4 * c, bo = b[i] * 4 * c;
+			switch (ops[i]) {
+			case CONST: {
+				double vr = cRe[i], vi = cIm[i];
+				for (int j = 0; j < n; j++) {
+					s[o+j] = vr;
+					s[o+c+j] = vi;
+					s[o+2*c+j] = 0;
+					s[o+3*c+j] = 0;
+				}
+				break;
+			}
+			case VAR:
+				System.arraycopy(re, 0, s, o, n);
+				System.arraycopy(im, 0, s, o+c, n);
+				for (int j = 0; j < n; j++) {
+					s[o+2*c+j] = 1;
+					s[o+3*c+j] = 0;
+				}
+				break;
+			case ADD:
+				for (int k = 0; k < 4 * c; k += c)
+					for (int j = 0; j < n; j++)
+						s[o+k+j] = s[ao+k+j] + s[bo+k+j];
+				break;
+			case SUB:
+				for (int k = 0; k < 4 * c; k += c)
+					for (int j = 0; j < n; j++)
+						s[o+k+j] = s[ao+k+j] - s[bo+k+j];
+				break;
+			case MUL:
+				for (int j = 0; j < n; j++) {
+					double ar = s[ao+j], ai = s[ao+c+j], br = s[bo+j], bi = s[bo+c+j];
+					double dar = s[ao+2*c+j], dai = s[ao+3*c+j];
+					double dbr = s[bo+2*c+j], dbi = s[bo+3*c+j];
+					s[o+j] = ar * br - ai * bi;
+					s[o+c+j] = ar * bi + ai * br;
+					s[o+2*c+j] = dar * br - dai * bi + ar * dbr - ai * dbi;
+					s[o+3*c+j] = dar * bi + dai * br + ar * dbi + ai * dbr;
+				}
+				break;
+			case DIV:
+				// v = a / b and v' = (a' - v * b') / b
+				for (int j = 0; j < n; j++) {
+					double br = s[bo+j], bi = s[bo+c+j], base = br * br + bi * bi;
+					double ar = s[ao+j], ai = s[ao+c+j];
+					double vr = (br * ar + bi * ai) / base, vi = (br * ai - bi * ar) / base;
+					double dbr = s[bo+2*c+j], dbi = s[bo+3*c+j];
+					double tr = s[ao+2*c+j] - (vr * dbr - vi * dbi);
+					double ti = s[ao+3*c+j] - (vr * dbi + vi * dbr);
+					s[o+j] = vr;
+					s[o+c+j] = vi;
+					s[o+2*c+j] = (br * tr + bi * ti) / base;
+					s[o+3*c+j] = (br * ti - bi * tr) / base;
+				}
+				break;
+			case POW:
+				for (int j = 0; j < n; j++) {
+					long e = Math.round(s[bo+j]);
+					if (e <= 1) {
+						for (int k = 0; k < 4 * c; k += c)
+							s[o+k+j] = s[ao+k+j];
+						continue;
+					}
+
+					// p = a^(n-1), v = p * a and v' = n * p * a'
+					double ar = s[ao+j], ai = s[ao+c+j], dar = s[ao+2*c+j], dai = s[ao+3*c+j];
+					pow(ar, ai, e - 1, s, o+j, c);
+					double pr = s[o+j], pi = s[o+c+j];
+					s[o+j] = pr * ar - pi * ai;
+					s[o+c+j] = pr * ai + pi * ar;
+					s[o+2*c+j] = e * (pr * dar - pi * dai);
+					s[o+3*c+j] = e * (pr * dai + pi * dar);
+				}
+				break;
+			}
+		}
+
+		int r = (count - 1) * 4 * c;
+		for (int k = 0; k < 4 * c; k += c)
+			System.arraycopy(s, r + k, out, k, n);
+	}
+
+	/**
+	 * Evaluates the formula and its 1st derivation with single
+	 * precision for a batch of values; the same as
+	 * {@link #evalBatch(double[], double[], int, double[], double[])}
+	 * with half of the memory, so twice as many values fit into the
+	 * caches and vector registers
+	 *
+	 * @param re Re parts of x; the length is the capacity of the batch
+	 * @param im Im parts of x
+	 * @param n Number of values
+	 * @param s Slot memory of {@link #getBatchSlotSize(int)} floats
+	 * @param out The results as four blocks of capacity values: the re
+	 * and im parts of f(x) and the re and im parts of f'(x)
+	 */
+	public void evalBatch(float[] re, float[] im, int n, float[] s, float[] out) {
+		int c = re.length;
+		for (int i = 0; i < count; i++) {
+			int o = i * 4 * c, ao = a[i] * 4 * c, bo = b[i] * 4 * c;
+			switch (ops[i]) {
+			case CONST: {
+				float vr = (float) cRe[i], vi = (float) cIm[i];
+				for (int j = 0; j < n; j++) {
+					s[o+j] = vr;
+					s[o+c+j] = vi;
+					s[o+2*c+j] = 0;
+					s[o+3*c+j] = 0;
+				}
+				break;
+			}
+			case VAR:
+				System.arraycopy(re, 0, s, o, n);
+				System.arraycopy(im, 0, s, o+c, n);
+				for (int j = 0; j < n; j++) {
+					s[o+2*c+j] = 1;
+					s[o+3*c+j] = 0;
+				}
+				break;
+			case ADD:
+				for (int k = 0; k < 4 * c; k += c)
+					for (int j = 0; j < n; j++)
+						s[o+k+j] = s[ao+k+j] + s[bo+k+j];
+				break;
+			case SUB:
+				for (int k = 0; k < 4 * c; k += c)
+					for (int j = 0; j < n; j++)
+						s[o+k+j] = s[ao+k+j] - s[bo+k+j];
+				break;
+			case MUL:
+				for (int j = 0; j < n; j++) {
+					float ar = s[ao+j], ai = s[ao+c+j], br = s[bo+j], bi = s[bo+c+j];
+					float dar = s[ao+2*c+j], dai = s[ao+3*c+j];
+					float dbr = s[bo+2*c+j], dbi = s[bo+3*c+j];
+					s[o+j] = ar * br - ai * bi;
+					s[o+c+j] = ar * bi + ai * br;
+					s[o+2*c+j] = dar * br - dai * bi + ar * dbr - ai * dbi;
+					s[o+3*c+j] = dar * bi + dai * br + ar * dbi + ai * dbr;
+				}
+				break;
+			case DIV:
+				// v = a / b and v' = (a' - v * b') / b
+				for (int j = 0; j < n; j++) {
+					float br = s[bo+j], bi = s[bo+c+j], base = br * br + bi * bi;
+					float ar = s[ao+j], ai = s[ao+c+j];
+					float vr = (br * ar + bi * ai) / base, vi = (br * ai - bi * ar) / base;
+					float dbr = s[bo+2*c+j], dbi = s[bo+3*c+j];
+					float tr = s[ao+2*c+j] - (vr * dbr - vi * dbi);
+					float ti = s[ao+3*c+j] - (vr * dbi + vi * dbr);
+					s[o+j] = vr;
+					s[o+c+j] = vi;
+					s[o+2*c+j] = (br * tr + bi * ti) / base;
+					s[o+3*c+j] = (br * ti - bi * tr) / base;
+				}
+				break;
+			case POW:
+				for (int j = 0; j < n; j++) {
+					long e = Math.round(s[bo+j]);
+					if (e <= 1) {
+						for (int k = 0; k < 4 * c; k += c)
+							s[o+k+j] = s[ao+k+j];
+						continue;
+					}
+
+					// p = a^(n-1), v = p * a and v' = n * p * a'
+					float ar = s[ao+j], ai = s[ao+c+j], dar = s[ao+2*c+j], dai = s[ao+3*c+j];
+					pow(ar, ai, e - 1, s, o+j, c);
+					float pr = s[o+j], pi = s[o+c+j];
+					s[o+j] = pr * ar - pi * ai;
+					s[o+c+j] = pr * ai + pi * ar;
+					s[o+2*c+j] = e * (pr * dar - pi * dai);
+					s[o+3*c+j] = e * (pr * dai + pi * dar);
+				}
+				break;
+			}
+		}
+
+		int r = (count - 1) * 4 * c;
+		for (int k = 0; k < 4 * c; k += c)
+			System.arraycopy(s, r + k, out, k, n);
+	}
+
+	/**
+	 * Evaluates the formula and its 1st and 2nd derivation with
+	 * double precision (for the solvers of higher order)
+	 *
+	 * @param re Re part of x
+	 * @param im Im part of x
+	 * @param s Slot memory of {@link #getSlotSize()} doubles
+	 * @param out The result: f(x), f'(x) and f''(x) (re, im each)
+	 */
+	public void eval2(double re, double im, double[] s, double[] out) {
+		for (int i = 0; i < count; i++) {
+			int o = i * 6, ao = a[i] * 6, bo = b[i] * 6;
+			switch (ops[i]) {
+			case CONST:
+				s[o] = cRe[i];
+				s[o+1] = cIm[i];
+				s[o+2] = s[o+3] = s[o+4] = s[o+5] = 0;
+				break;
+			case VAR:
+				s[o] = re;
+				s[o+1] = im;
+				s[o+2] = 1;
+				s[o+3] = s[o+4] = s[o+5] = 0;
+				break;
+			case ADD:
+				for (int k = 0; k < 6; k++)
+					s[o+k] = s[ao+k] + s[bo+k];
+				break;
+			case SUB:
+				for (int k = 0; k < 6; k++)
+					s[o+k] = s[ao+k] - s[bo+k];
+				break;
+			case MUL: {
+				// v'' = a'' * b + 2 * a' * b' + a * b''
+				double ar = s[ao], ai = s[ao+1], br = s[bo], bi = s[bo+1];
+				double dar = s[ao+2], dai = s[ao+3], dbr = s[bo+2], dbi = s[bo+3];
+				double ear = s[ao+4], eai = s[ao+5], ebr = s[bo+4], ebi = s[bo+5];
+				s[o] = ar * br - ai * bi;
+				s[o+1] = ar * bi + ai * br;
+				s[o+2] = dar * br - dai * bi + ar * dbr - ai * dbi;
+				s[o+3] = dar * bi + dai * br + ar * dbi + ai * dbr;
+				s[o+4] = ear * br - eai * bi + 2 * (dar * dbr - dai * dbi) + ar * ebr - ai * ebi;
+				s[o+5] = ear * bi + eai * br + 2 * (dar * dbi + dai * dbr) + ar * ebi + ai * ebr;
+				break;
+			}
+			case DIV: {
+				// v = a / b, v' = (a' - v * b') / b and
+				// v'' = (a'' - 2 * v' * b' - v * b'') / b
+				div(s[ao], s[ao+1], s[bo], s[bo+1], s, o);
+				double vr = s[o], vi = s[o+1], dbr = s[bo+2], dbi = s[bo+3];
+				double ebr = s[bo+4], ebi = s[bo+5];
+				div(s[ao+2] - (vr * dbr - vi * dbi), s[ao+3] - (vr * dbi + vi * dbr),
+						s[bo], s[bo+1], s, o+2);
+				double dvr = s[o+2], dvi = s[o+3];
+				div(s[ao+4] - 2 * (dvr * dbr - dvi * dbi) - (vr * ebr - vi * ebi),
+						s[ao+5] - 2 * (dvr * dbi + dvi * dbr) - (vr * ebi + vi * ebr),
+						s[bo], s[bo+1], s, o+4);
+				break;
+			}
+			case POW: {
+				long n = Math.round(s[bo]);
+				if (n <= 1) {
+					for (int k = 0; k < 6; k++)
+						s[o+k] = s[ao+k];
+					break;
+				}
+
+				// p = a^(n-2), q = p * a, v = q * a, v' = n * q * a' and
+				// v'' = n * (q * a'' + (n-1) * p * a'^2)
+				double ar = s[ao], ai = s[ao+1];
+				double dar = s[ao+2], dai = s[ao+3], ear = s[ao+4], eai = s[ao+5];
+				pow(ar, ai, n - 2, s, o);
+				double pr = s[o], pi = s[o+1];
+				double qr = pr * ar - pi * ai, qi = pr * ai + pi * ar;
+				double sr = dar * dar - dai * dai, si = 2 * dar * dai;
+				s[o] = qr * ar - qi * ai;
+				s[o+1] = qr * ai + qi * ar;
+				s[o+2] = n * (qr * dar - qi * dai);
+				s[o+3] = n * (qr * dai + qi * dar);
+				s[o+4] = n * (qr * ear - qi * eai + (n - 1) * (pr * sr - pi * si));
+				s[o+5] = n * (qr * eai + qi * ear + (n - 1) * (pr * si + pi * sr));
+				break;
+			}
+			}
+		}
+
+		System.arraycopy(s, (count - 1) * 6, out, 0, 6);
+	}
+
+	/**
+	 * Evaluates the formula and its 1st derivation with
+	 * double-double precision
+	 *
+	 * @param z The complex double-double x (4 doubles)
+	 * @param s Slot memory of {@link #getSlotSize()} doubles
+	 * @param t Temporary memory of {@link #TEMP_SIZE} doubles
+	 * @param out The result: f(x) and f'(x) (8 doubles)
+	 */
+	public void evalDD(double[] z, double[] s, double[] t, double[] out) {
+		for (int i = 0; i < count; i++) {
+			int o = i * 8, d = o + 4, ao = a[i] * 8, bo = b[i] * 8;
+			switch (ops[i]) {
+			case CONST:
+				s[o] = cRe[i];
+				s[o+2] = cIm[i];
+				s[o+1] = s[o+3] = s[d] = s[d+1] = s[d+2] = s[d+3] = 0;
+				break;
+			case VAR:
+				System.arraycopy(z, 0, s, o, 4);
+				s[d] = 1;
+				s[d+1] = s[d+2] = s[d+3] = 0;
+				break;
+			case ADD:
+				DoubleDouble.cadd(s, ao, s, bo, s, o);
+				DoubleDouble.cadd(s, ao+4, s, bo+4, s, d);
+				break;
+			case SUB:
+				DoubleDouble.csub(s, ao, s, bo, s, o);
+				DoubleDouble.csub(s, ao+4, s, bo+4, s, d);
+				break;
+			case MUL:
+				// v' = a' * b + a * b'
+				DoubleDouble.cmul(s, ao+4, s, bo, s, d, t);
+				DoubleDouble.cmul(s, ao, s, bo+4, t, 10, t);
+				DoubleDouble.cadd(s, d, t, 10, s, d);
+				DoubleDouble.cmul(s, ao, s, bo, s, o, t);
+				break;
+			case DIV:
+				// v = a / b and v' = (a' - v * b') / b
+				DoubleDouble.cdiv(s, ao, s, bo, s, o, t);
+				DoubleDouble.cmul(s, o, s, bo+4, t, 10, t);
+				DoubleDouble.csub(s, ao+4, t, 10, t, 10);
+				DoubleDouble.cdiv(t, 10, s, bo, s, d, t);
+				break;
+			case POW: {
+				long n = Math.round(s[bo]);
+				if (n <= 1) {
+					System.arraycopy(s, ao, s, o, 8);
+					break;
+				}
+
+				// p = a^(n-1) by repeated squaring of the base (in the
+				// slot itself), v = p * a and v' = n * p * a'
+				System.arraycopy(s, ao, s, o, 4);
+				t[10] = 1;
+				t[11] = t[12] = t[13] = 0;
+				for (long m = n - 1; ; ) {
+					if ((m & 1) != 0)
+						DoubleDouble.cmul(t, 10, s, o, t, 10, t);
+					m >>= 1;
+					if (m == 0)
+						break;
+					DoubleDouble.cmul(s, o, s, o, s, o, t);
+				}
+				DoubleDouble.cmul(t, 10, s, ao+4, s, d, t);
+				DoubleDouble.cmul(t, 10, s, ao, s, o, t);
+				for (int k = 0; k < 4; k += 2)
+					DoubleDouble.mul(s[d+k], s[d+k+1], n, 0, s, d+k);
+				break;
+			}
+			}
+		}
+
+		System.arraycopy(s, (count - 1) * 8, out, 0, 8);
+	}
+
+	/**
+	 * Copies the values of all slots after a call of
+	 * {@link #evalDD(double[], double[], double[], double[])}
+	 * rounded to double precision: the reference values for
+	 * {@link #evalDelta(double[], double, double, double[], double[])}
+	 *
+	 * @param s The slot memory after the evaluation
+	 * @param ref The reference values (4 doubles per slot)
+	 */
+	void storeReference(double[] s, double[] ref) {
+		for (int i = 0; i < count; i++)
+			for (int k = 0; k < 4; k++)
+				ref[i*4+k] = s[i*8+k*2] + s[i*8+k*2+1];
+	}
+
+	/**
+	 * Evaluates the difference of the formula and its 1st
+	 * derivation between <code>X + dx</code> and the reference
+	 * point <code>X</code>. The difference is calculated from
+	 * the reference values by the algebraic rules of every
+	 * operation, so it keeps its relative precision even if it is
+	 * much smaller than the precision of X itself
+	 *
+	 * @param ref The reference values of all slots at X
+	 * @param dRe Re part of dx
+	 * @param dIm Im part of dx
+	 * @param s Slot memory of {@link #getSlotSize()} doubles
+	 * @param out The difference of f and f' (4 doubles)
+	 */
+	void evalDelta(double[] ref, double dRe, double dIm, double[] s,
+			double[] out) {
+		for (int i = 0; i < count; i++) {
+			int o = i * 4, ao = a[i] * 4, bo = b[i] * 4;
+			switch (ops[i]) {
+			case CONST:
+				s[o] = s[o+1] = s[o+2] = s[o+3] = 0;
+				break;
+			case VAR:
+				s[o] = dRe;
+				s[o+1] = dIm;
+				s[o+2] = s[o+3] = 0;
+				break;
+			case ADD:
+				for (int k = 0; k < 4; k++)
+					s[o+k] = s[ao+k] + s[bo+k];
+				break;
+			case SUB:
+				for (int k = 0; k < 4; k++)
+					s[o+k] = s[ao+k] - s[bo+k];
+				break;
+			case MUL: {
+				double Ar = ref[ao], Ai = ref[ao+1], Adr = ref[ao+2], Adi = ref[ao+3];
+				double Br = ref[bo], Bi = ref[bo+1], Bdr = ref[bo+2], Bdi = ref[bo+3];
+				double ar = s[ao], ai = s[ao+1], adr = s[ao+2], adi = s[ao+3];
+				double br = s[bo], bi = s[bo+1], bdr = s[bo+2], bdi = s[bo+3];
+				double Bnr = Br + br, Bni = Bi + bi, Bdnr = Bdr + bdr, Bdni = Bdi + bdi;
+
+				// dv = A db + da (B + db)
+				s[o] = Ar * br - Ai * bi + ar * Bnr - ai * Bni;
+				s[o+1] = Ar * bi + Ai * br + ar * Bni + ai * Bnr;
+
+				// dv' = A' db + da' (B + db) + A db' + da (B' + db')
+				s[o+2] = Adr * br - Adi * bi + adr * Bnr - adi * Bni
+						+ Ar * bdr - Ai * bdi + ar * Bdnr - ai * Bdni;
+				s[o+3] = Adr * bi + Adi * br + adr * Bni + adi * Bnr
+						+ Ar * bdi + Ai * bdr + ar * Bdni + ai * Bdnr;
+				break;
+			}
+			case DIV: {
+				double Ar = ref[ao], Ai = ref[ao+1], Adr = ref[ao+2], Adi = ref[ao+3];
+				double Br = ref[bo], Bi = ref[bo+1], Bdr = ref[bo+2], Bdi = ref[bo+3];
+				double ar = s[ao], ai = s[ao+1], adr = s[ao+2], adi = s[ao+3];
+				double br = s[bo], bi = s[bo+1], bdr = s[bo+2], bdi = s[bo+3];
+				double Bnr = Br + br, Bni = Bi + bi, Bdnr = Bdr + bdr, Bdni = Bdi + bdi;
+
+				// dv = (da B - A db) / (B (B + db))
+				div(ar * Br - ai * Bi - (Ar * br - Ai * bi),
+						ar * Bi + ai * Br - (Ar * bi + Ai * br),
+						Br * Bnr - Bi * Bni, Br * Bni + Bi * Bnr, s, o);
+
+				// v' = N / M with N = A' B - A B' and M = B^2:
+				// dv' = (dN M - N dM) / (M (M + dM))
+				double Nr = Adr * Br - Adi * Bi - (Ar * Bdr - Ai * Bdi);
+				double Ni = Adr * Bi + Adi * Br - (Ar * Bdi + Ai * Bdr);
+				double Mr = Br * Br - Bi * Bi, Mi = 2 * Br * Bi;
+				double dNr = Adr * br - Adi * bi + adr * Bnr - adi * Bni
+						- (Ar * bdr - Ai * bdi + ar * Bdnr - ai * Bdni);
+				double dNi = Adr * bi + Adi * br + adr * Bni + adi * Bnr
+						- (Ar * bdi + Ai * bdr + ar * Bdni + ai * Bdnr);
+				double sr = Br + Bnr, si = Bi + Bni;
+				double dMr = br * sr - bi * si, dMi = br * si + bi * sr;
+				double Mnr = Mr + dMr, Mni = Mi + dMi;
+				div(dNr * Mr - dNi * Mi - (Nr * dMr - Ni * dMi),
+						dNr * Mi + dNi * Mr - (Nr * dMi + Ni * dMr),
+						Mr * Mnr - Mi * Mni, Mr * Mni + Mi * Mnr, s, o+2);
+				break;
+			}
+			case POW: {
+				long n = Math.round(ref[bo]);
+				if (n <= 1) {
+					for (int k = 0; k < 4; k++)
+						s[o+k] = s[ao+k];
+					break;
+				}
+
+				// p(k+1) = p(k) a: dp(k+1) = P(k) da + dp(k) (A + da)
+				double Ar = ref[ao], Ai = ref[ao+1], ar = s[ao], ai = s[ao+1];
+				double Anr = Ar + ar, Ani = Ai + ai;
+				double Pr = Ar, Pi = Ai, pr = ar, pi = ai, Pmr = Pr, Pmi = Pi,
+						pmr = pr, pmi = pi;
+				for (long k = 1; k < n; k++) {
+					if (k == n - 1) {
+						Pmr = Pr;
+						Pmi = Pi;
+						pmr = pr;
+						pmi = pi;
+					}
+					double t = Pr * ar - Pi * ai + pr * Anr - pi * Ani;
+					pi = Pr * ai + Pi * ar + pr * Ani + pi * Anr;
+					pr = t;
+					t = Pr * Ar - Pi * Ai;
+					Pi = Pr * Ai + Pi * Ar;
+					Pr = t;
+				}
+				s[o] = pr;
+				s[o+1] = pi;
+
+				// v' = n p(n-1) a': dv' = n (P(n-1) da' + dp(n-1) (A' + da'))
+				double adr = s[ao+2], adi = s[ao+3];
+				double Adnr = ref[ao+2] + adr, Adni = ref[ao+3] + adi;
+				s[o+2] = n * (Pmr * adr - Pmi * adi + pmr * Adnr - pmi * Adni);
+				s[o+3] = n * (Pmr * adi + Pmi * adr + pmr * Adni + pmi * Adnr);
+				break;
+			}
+			}
+		}
+
+		int r = (count - 1) * 4;
+		out[0] = s[r];
+		out[1] = s[r+1];
+		out[2] = s[r+2];
+		out[3] = s[r+3];
+	}
+
+	/**
+	 * Divides two complex numbers and stores the result
+	 */
+	static void div(double ar, double ai, double br, double bi,
+			double[] r, int ri) {
+		double base = br * br + bi * bi;
+		r[ri] = (br * ar + bi * ai) / base;
+		r[ri+1] = (br * ai - bi * ar) / base;
+	}
+
+	/**
+	 * Calculates <code>a^n</code> by repeated squaring and stores
+	 * the result
+	 */
+	static void pow(double ar, double ai, long n, double[] r, int ri) {
+		pow(ar, ai, n, r, ri, 1);
+	}
+
+	/**
+	 * Calculates <code>a^n</code> and stores the re and im part
+	 * <code>stride</code> doubles apart
+	 */
+	static void pow(double ar, double ai, long n, double[] r, int ri, int stride) {
+		double pr = 1, pi = 0;
+		while (true) {
+			if ((n & 1) != 0) {
+				double t = pr * ar - pi * ai;
+				pi = pr * ai + pi * ar;
+				pr = t;
+			}
+			n >>= 1;
+			if (n == 0)
+				break;
+			double t = ar * ar - ai * ai;
+			ai = 2 * ar * ai;
+			ar = t;
+		}
+		r[ri] = pr;
+		r[ri+stride] = pi;
+	}
+
+	/**
+	 * Calculates <code>a^n</code> with single precision and stores
+	 * the re and im part <code>stride</code> floats apart
+	 */
+	static void pow(float ar, float ai, long n, float[] r, int ri, int stride) {
+		float pr = 1, pi = 0;
+		while (true) {
+			if ((n & 1) != 0) {
+				float t = pr * ar - pi * ai;
+				pi = pr * ai + pi * ar;
+				pr = t;
+			}
+			n >>= 1;
+			if (n == 0)
+				break;
+			float t = ar * ar - ai * ai;
+			ai = 2 * ar * ai;
+			ar = t;
+		}
+		r[ri] = pr;
+		r[ri+stride] = pi;
+	}
+
+	/**
+	 * Returns the slot with the value of the formula
+	 */
+	int getResultSlot() {
+		return count - 1;
+	}
+
+	@Override
+	public String toString() {
+		return source;
+	}
+
+}
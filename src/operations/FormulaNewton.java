@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * The Newton method (or another {@link Solver}) with double
+ * precision for a compiled {@link Formula}; the derivations are
+ * calculated exactly by the formula itself, so no rounding of the
+ * iterates is needed
+ * 
+ * @author maxstrauch
+ */
+public class FormulaNewton implements PixelSolver {
+
+	/**
+	 * The function
+	 */
+	private final Formula f;
+	
+	/**
+	 * The viewport of the pixels (may be <code>null</code> if
+	 * only {@link #solve(double, double, int, double[])} is used)
+	 */
+	private final Viewport viewport;
+	
+	/**
+	 * The iteration scheme
+	 */
+	private final Solver solver;
+	
+	/**
+	 * If the 2nd derivation is needed by the scheme
+	 */
+	private final boolean second;
+	
+	/**
+	 * The disks in which the iteration may stop or <code>null</code>
+	 */
+	private ConvergenceDisks disks;
+	
+	/**
+	 * Working memory
+	 */
+	private final double[] slots, value = new double[6], step = new double[2];
+	
+	/**
+	 * Creates a new solver with the Newton method
+	 * 
+	 * @param f The function
+	 * @param viewport The viewport of the pixels
+	 */
+	public FormulaNewton(Formula f, Viewport viewport) {
+		this(f, viewport, Solver.NEWTON);
+	}
+	
+	/**
+	 * Creates a new solver
+	 * 
+	 * @param f The function
+	 * @param viewport The viewport of the pixels
+	 * @param solver The iteration scheme
+	 */
+	public FormulaNewton(Formula f, Viewport viewport, Solver solver) {
+		this.f = f;
+		this.viewport = viewport;
+		this.solver = solver;
+		second = solver.needsSecondDerivation();
+		slots = new double[f.getSlotSize()];
+	}
+	
+	/**
+	 * Sets the disks around the roots in which the Newton method
+	 * surely converges; pixels whose iterates enter a disk stop with
+	 * the root of the disk
+	 * 
+	 * @param disks The disks or <code>null</code>
+	 */
+	public void setDisks(ConvergenceDisks disks) {
+		if (disks != null && solver != Solver.NEWTON)
+			throw new IllegalArgumentException("The solver " + solver 
+					+ " has no convergence disks");
+		this.disks = disks;
+	}
+	
+	@Override
+	public void solve(double x, double y, double[] out) {
+		solve(viewport.getRe(x), viewport.getIm(y), 0, out);
+	}
+	
+	/**
+	 * Runs the iteration for a start value
+	 * 
+	 * @param re Re part of the start value
+	 * @param im Im part of the start value
+	 * @param iterations The number of iterations already done
+	 * (if the start value is the result of another method)
+	 * @param out The root (NaN if the method doesn't converge) and
+	 * the total number of iterations
+	 */
+	public void solve(double re, double im, int iterations, double[] out) {
+		int i;
+		for (i = iterations; i < AutoDerivateNewton.MAX_ITERATIONS; i++) {
+			if (second)
+				f.eval2(re, im, slots, value);
+			else
+				f.eval(re, im, slots, value);
+			
+			// x - d, e.g. d = f(x) / f'(x)
+			solver.step(value, step);
+			double tr = re - step[0];
+			double ti = im - step[1];
+			
+			// Check the result
+			if (Double.isNaN(tr) || Double.isNaN(ti) || 
+					Double.isInfinite(tr) || Double.isInfinite(ti))
+				break;
+			
+			// Calculate an epsilon to exit calculation
+			double e = Math.abs(tr-re) + Math.abs(ti-im);
+			re = tr;
+			im = ti;
+			
+			if (e < AutoDerivateNewton.EPSILON) {
+				out[0] = re;
+				out[1] = im;
+				out[2] = i + 1;
+				return;
+			}
+			
+			if (disks != null && e < disks.getMaxRadius()) {
+				int disk = disks.find(re, im);
+				if (disk >= 0) {
+					out[0] = disks.getRe(disk);
+					out[1] = disks.getIm(disk);
+					out[2] = i + 1;
+					return;
+				}
+			}
+		}
+		
+		out[0] = Double.NaN;
+		out[1] = Double.NaN;
+		out[2] = i;
+	}
+	
+}
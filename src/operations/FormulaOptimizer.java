@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import helpers.SimpleComplexMath;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplifies a parsed formula before it is compiled into a
+ * {@link Formula}:
+ * <ul>
+ * <li>operators with constant operands are replaced by their value
+ * (e.g. <code>2*3</code> becomes <code>6</code>)</li>
+ * <li>powers with a constant exponent are replaced by a chain of
+ * multiplications (exponentiation by squaring), e.g.
+ * <code>x^8 = ((x*x)*(x*x))*((x*x)*(x*x))</code>; the repeated
+ * operands are the same node, so the compiled formula computes
+ * each of them only once</li>
+ * </ul>
+ * Equal subexpressions (e.g. <code>x^2</code> used twice) are
+ * merged by {@link Formula} when it is compiled. The rules of
+ * {@link ComplexMathParser#eval(char[], char, char[], Object[][])}
+ * are kept, so an optimized formula has the same value
+ *
+ * @author maxstrauch
+ */
+public class FormulaOptimizer {
+
+	/**
+	 * Optimizes an expression tree
+	 *
+	 * @param n The root of the tree
+	 * @return The root of the optimized tree (may share nodes
+	 * between several parents)
+	 */
+	public static ExpressionNode optimize(ExpressionNode n) {
+		// Long sums and products are nested on the left side, so the
+		// left operands are walked in a loop instead of recursively
+		List<ExpressionNode> spine = new ArrayList<ExpressionNode>();
+		while (n.getLeft() != null) {
+			spine.add(n);
+			n = n.getLeft();
+		}
+
+		ExpressionNode left = n;
+		for (int i = spine.size() - 1; i >= 0; i--)
+			left = optimize(spine.get(i), left);
+		return left;
+	}
+
+	/**
+	 * Optimizes an operator node
+	 *
+	 * @param n The node
+	 * @param left The optimized left operand of the node
+	 * @return The optimized node
+	 */
+	private static ExpressionNode optimize(ExpressionNode n, ExpressionNode left) {
+		ExpressionNode right = optimize(n.getRight());
+
+		// Constant folding
+		if (left.isConstant() && right.isConstant()) {
+			double[] value = fold(n.getOp(), 
+					new double[] { left.getRe(), left.getIm() },
+					new double[] { right.getRe(), right.getIm() });
+			return ExpressionNode.constant(value[0], value[1]);
+		}
+
+		// Strength reduction of powers
+		if (n.getOp() == '^' && right.isConstant()) {
+			long e = Math.round(right.getRe());
+			return e <= 1 ? left : power(left, e);
+		}
+
+		if (left == n.getLeft() && right == n.getRight())
+			return n;
+		return ExpressionNode.operator(n.getOp(), left, right);
+	}
+
+	/**
+	 * Builds <code>base^e</code> from multiplications
+	 *
+	 * @param base The base
+	 * @param e The exponent (at least 1)
+	 */
+	private static ExpressionNode power(ExpressionNode base, long e) {
+		if (e == 1)
+			return base;
+
+		ExpressionNode half = power(base, e / 2);
+		ExpressionNode square = ExpressionNode.operator('*', half, half);
+		return (e & 1) == 0 ? square : ExpressionNode.operator('*', square, base);
+	}
+
+	/**
+	 * Calculates the value of an operator with constant operands
+	 */
+	private static double[] fold(char op, double[] a, double[] b) {
+		switch (op) {
+		case '+':
+			return SimpleComplexMath.add(a, b);
+		case '-':
+			return SimpleComplexMath.sub(a, b);
+		case '*':
+			return SimpleComplexMath.mult(a, b);
+		case '/':
+			return SimpleComplexMath.div(a, b);
+		case '^':
+			return SimpleComplexMath.pow(a, b);
+		}
+		throw new UnsupportedOperationException("Operator unknown");
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * Thrown if a formula can't be parsed
+ *
+ * @author maxstrauch
+ */
+public class FormulaSyntaxException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The index of the character where the error was found
+	 */
+	private final int position;
+
+	/**
+	 * Creates the exception
+	 *
+	 * @param message The description of the error
+	 * @param position The index of the character where the error
+	 * was found
+	 */
+	public FormulaSyntaxException(String message, int position) {
+		super(message + " at position " + position);
+		this.position = position;
+	}
+
+	/**
+	 * Returns the index of the character where the error was found
+	 * (starting with 0)
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+}
@@ -21,23 +21,33 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Insets;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.TexturePaint;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
-import javax.imageio.ImageIO;
+import javax.swing.AbstractAction;
 import javax.swing.Box;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JEditorPane;
@@ -48,7 +58,10 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSpinner;
 import javax.swing.JTextField;
+import javax.swing.KeyStroke;
 import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.border.EmptyBorder;
 import javax.swing.filechooser.FileFilter;
@@ -74,7 +87,17 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
 	 * The two buttons to start the computation and
 	 * export the result
 	 */
-    private JButton startButton, exportBtn;
+    private JButton startButton, exportBtn, openBtn;
+    
+    /**
+     * Toggles the shading by iteration count
+     */
+    private JCheckBox shadeBox;
+    
+    /**
+     * Toggles the anti-aliasing of the borders between the roots
+     */
+    private JCheckBox aaBox;
     
     /**
      * Text area to output the root
@@ -107,11 +130,60 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
 	 */
     private BufferedImage buf = null;
     
+    /**
+     * The area of the complex pane {@link #buf} shows
+     */
+    private Viewport shown;
+    
+    /**
+     * The area of the complex pane to show; moved by the mouse
+     */
+    private Viewport view;
+    
+    /**
+     * The area the running task is computed for
+     */
+    private Viewport rendering;
+    
+    /**
+     * If the running task is the low resolution pass of a mouse
+     * gesture
+     */
+    private boolean lowRes;
+    
+    /**
+     * The last finished render and the last finished render in
+     * full resolution; they provide the pixels which are still
+     * visible to the next render
+     */
+    private RenderFile last, full;
+    
+    /**
+     * Starts the render in full resolution when the mouse
+     * gesture stops
+     */
+    private Timer refineTimer;
+    
+    /**
+     * Paints the finished tiles of the running render
+     */
+    private FrameUpdater updater;
+    
+    /**
+     * Saves the running render periodically
+     */
+    private Checkpoint checkpoint;
+    
     /**
      * The preview pane
      */
     private PreviewPane previewPane;    
     
+    /**
+     * The image shown by the preview pane; updated with {@link #buf}
+     */
+    private final Thumbnail thumbnail = new Thumbnail(PREVIEW_SIZE, PREVIEW_SIZE);
+    
     /**
      * The dimensions of the main frame
      */
@@ -121,6 +193,65 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
      * The preview position of the image
      */
     private int xpos = 0, ypos = 0;
+    
+    /**
+     * The center of the image in the complex pane
+     */
+    private BigDecimal centerRe = BigDecimal.ZERO, centerIm = BigDecimal.ZERO;
+    
+    /**
+     * The arrow keys move the image by this fraction of its size
+     */
+    private static final int PAN_FRACTION = 8;
+    
+    /**
+     * The width and height of the image are divided by this while
+     * the image is moved by the mouse
+     */
+    private static final int LOW_RES = 4;
+    
+    /**
+     * Time without mouse gestures until the image is computed in
+     * full resolution (ms)
+     */
+    private static final int REFINE_DELAY = 200;
+    
+    /**
+     * Change of the pixel size per step of the mouse wheel
+     */
+    private static final double WHEEL_ZOOM = 1.25;
+    
+    /**
+     * Minimal time between two repaints of a running render (ms)
+     */
+    private static final int FRAME_INTERVAL = 40;
+    
+    /**
+     * The height of the statistics text area
+     */
+    private static final int STATUS_HEIGHT = 30;
+    
+    /**
+     * The width and height of the preview pane
+     */
+    private static final int PREVIEW_SIZE = 150;
+    
+    /**
+     * The checkpoint of the running render; it is offered to be
+     * resumed on the next start if the application is killed
+     */
+    private static final File CHECKPOINT = new File(System.getProperty("user.home"),
+    		".newtonfractal-checkpoint" + RenderFile.EXTENSION);
+    
+    /**
+     * Minimal time between two checkpoints (ms)
+     */
+    private static final long CHECKPOINT_INTERVAL = 30000;
+    
+    /**
+     * The checkered background
+     */
+    private static final TexturePaint BACKGROUND = createBackground(20);
  
     /**
      * Constructs a new Newton fractal panel with controls
@@ -134,6 +265,36 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
         range.setValue(new Double(1.0));
         formula.setText("x^3-1");
         requestFocus();
+        
+        // Resume an unfinished render or compute the demo image
+        SwingUtilities.invokeLater(new Runnable() {
+        	public void run() {
+        		if (CHECKPOINT.isFile() && JOptionPane.showConfirmDialog(
+        				NewtonFractal2.this, "Resume the unfinished render?", 
+        				"Resume", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION)
+        			open(CHECKPOINT);
+        		else
+        			start();
+        	}
+        });
+    }
+    
+    /**
+     * Creates the checkered background pattern
+     * 
+     * @param s The size of the squares
+     * @return The pattern
+     */
+    private static TexturePaint createBackground(int s) {
+    	BufferedImage img = new BufferedImage(2*s, 2*s, BufferedImage.TYPE_INT_RGB);
+    	Graphics g = img.getGraphics();
+    	g.setColor(new Color(0xffffff));
+    	g.fillRect(0, 0, 2*s, 2*s);
+    	g.setColor(new Color(0xeeeeee));
+    	g.fillRect(0, 0, s, s);
+    	g.fillRect(s, s, s, s);
+    	g.dispose();
+    	return new TexturePaint(img, new Rectangle(0, 0, 2*s, 2*s));
     }
     
     /**
@@ -158,6 +319,19 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
 		exportBtn.addActionListener(this);
 		exportBtn.setEnabled(false);
 
+		openBtn = new JButton("Open");
+		openBtn.setActionCommand("open");
+		openBtn.addActionListener(this);
+
+		shadeBox = new JCheckBox("Shade");
+		shadeBox.setOpaque(false);
+		shadeBox.setActionCommand("shade");
+		shadeBox.addActionListener(this);
+
+		aaBox = new JCheckBox("AA");
+		aaBox.setOpaque(false);
+		aaBox.setToolTipText("Anti-alias the borders between the roots");
+
 		taskOutput = new JEditorPane("text/html", "");
 		taskOutput.setMargin(new Insets(5, 5, 5, 5));
 		taskOutput.setEditable(false);
@@ -190,36 +364,77 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
         bottomButtons.add(formula);
         bottomButtons.add(zoomSize);
         bottomButtons.add(range);
+        bottomButtons.add(shadeBox);
+        bottomButtons.add(aaBox);
         bottomButtons.add(startButton);
         bottomButtons.add(exportBtn);
+        bottomButtons.add(openBtn);
         add(bottomButtons, BorderLayout.SOUTH);
+        
+        // The arrow keys move the image
+        bindPan(KeyEvent.VK_LEFT, -1, 0);
+        bindPan(KeyEvent.VK_RIGHT, 1, 0);
+        bindPan(KeyEvent.VK_UP, 0, -1);
+        bindPan(KeyEvent.VK_DOWN, 0, 1);
+        
+        // The mouse wheel zooms and dragging moves the image
+        Navigator navigator = new Navigator();
+        addMouseListener(navigator);
+        addMouseMotionListener(navigator);
+        addMouseWheelListener(navigator);
+        
+        refineTimer = new Timer(REFINE_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				render(view, false);
+			}
+		});
+        refineTimer.setRepeats(false);
+    }
+    
+    /**
+     * Binds a key to move the image into a direction
+     * 
+     * @param key The key code
+     * @param dx Horizontal direction (-1, 0 or 1)
+     * @param dy Vertical direction (-1, 0 or 1)
+     */
+    private void bindPan(int key, final int dx, final int dy) {
+    	String name = "pan" + dx + "," + dy;
+    	getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(key, 0), name);
+    	getActionMap().put(name, new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+
+			public void actionPerformed(ActionEvent e) {
+				pan(dx, dy);
+			}
+		});
     }
     
     @Override
     protected void paintComponent(Graphics g) {
     	super.paintComponent(g);
     	
-    	// Paint the background
-    	int s = 20;
-		for (int j = 0; j <= getHeight()/s; j++) {
-			for (int i = 0; i < getWidth()/s; i++) {
-				g.setColor((i+j)%2 == 0 ? new Color(0xeeeeee) : 
-					new Color(0xffffff));
-				g.fillRect(i*s, j*s, s, s);
-			}
-		}
+    	// Paint the background (only the damaged part)
+    	Rectangle clip = g.getClipBounds();
+    	if (clip == null)
+    		clip = new Rectangle(0, 0, getWidth(), getHeight());
+    	((Graphics2D) g).setPaint(BACKGROUND);
+    	g.fillRect(clip.x, clip.y, clip.width, clip.height);
     	
     	// Set dimensions
-    	mainDimension = new Dimension(getWidth(), getHeight());
-    	
-    	// If no buffered image available draw the demo image
-    	if (task == null || buf == null)
-    		start();
+    	if (mainDimension == null || mainDimension.width != getWidth() || 
+    			mainDimension.height != getHeight()) {
+    		mainDimension = new Dimension(getWidth(), getHeight());
+    		previewPane.repaint();
+    	}
     	
-    	buf = task.getImage();
+    	if (task == null || buf == null || view == null)
+    		return;
+    	if (previewPane.updateArea())
+    		previewPane.repaint();
     	
     	// Draw the image
-		g.drawImage(buf, xpos, ypos, null);
+		drawImage(g, view, xpos, ypos);
     	
 		// Print some statistical data
 		String str = task.toString();
@@ -237,7 +452,9 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
      * should be enabled otherwise <code>false</code>
      */
     private void setInputEnabled(boolean enabled) {
+    	openBtn.setEnabled(enabled);
     	formula.setEnabled(enabled);
+    	aaBox.setEnabled(enabled);
     	range.setEnabled(enabled);
     	zoomSize.setEnabled(enabled);
     }
@@ -251,17 +468,34 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
     	setInputEnabled(false);
     	taskOutput.setText("");
     	
+    	// A finished render provides all pixels which are still visible
+    	RenderFile previous = full;
+    	refineTimer.stop();
+    	if (task != null)
+    		task.cancel(true);
+    	
     	try {
     		double r = Double.parseDouble(String.valueOf(range.getValue()));
     		
     		// Create a new task instance
     		task = new NewtonFractalCalculator(
     				formula.getText(), 
-    				r, (Double) zoomSize.getSelectedItem(),
+    				Viewport.of(r, (Double) zoomSize.getSelectedItem())
+    						.withCenter(centerRe, centerIm),
     				this
     		);
+    		if (previous != null)
+    			task.reuse(previous);
+    		task.recolor(task.getColorizer().withShading(shadeBox.isSelected()));
+    		if (aaBox.isSelected())
+    			task.setAntiAliasing(SamplePattern.ROTATED_GRID);
     		
 		} catch (Exception e) {
+			if (e instanceof FormulaSyntaxException) {
+				formula.requestFocusInWindow();
+				formula.setCaretPosition(Math.min(formula.getText().length(), 
+						((FormulaSyntaxException) e).getPosition()));
+			}
 			JOptionPane.showMessageDialog(this, 
 					"Couldn't generate an image (" + e + ")", 
 					"Error", JOptionPane.ERROR_MESSAGE);
@@ -277,7 +511,150 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
     	
     	// If task creation works fine: let's start the
     	// calculation
-		task.execute();
+		execute(false);
+    }
+    
+    /**
+     * Shows the task and starts it; the finished tiles are painted
+     * as they come in
+     * 
+     * @param keep <code>true</code> to start with the last image
+     * moved to the area of the task, <code>false</code> to start
+     * with the current image of the task
+     */
+    private void execute(boolean keep) {
+    	if (updater != null)
+    		updater.stop();
+    	if (checkpoint != null)
+    		deleteCheckpoint();
+    	
+    	Viewport target = task.getViewport();
+    	if (keep && buf != null) {
+    		BufferedImage img = new BufferedImage(target.getWidth(), 
+    				target.getHeight(), BufferedImage.TYPE_INT_RGB);
+    		Graphics g = img.getGraphics();
+    		drawImage(g, target, 0, 0);
+    		g.dispose();
+    		buf = img;
+    	} else {
+    		buf = task.snapshot(buf);
+    	}
+    	thumbnail.update(buf);
+    	shown = view = rendering = target;
+    	lowRes = false;
+    	
+    	updater = new FrameUpdater(task);
+    	checkpoint = new Checkpoint(task, CHECKPOINT.toPath(), CHECKPOINT_INTERVAL);
+    	task.execute();
+    	repaint();
+    	previewPane.repaint();
+    }
+    
+    /**
+     * Draws the current image moved and scaled to an area of the
+     * complex pane
+     * 
+     * @param g The graphics to draw on
+     * @param target The area the graphics show
+     * @param x The column of the graphics which shows the first
+     * column of the area
+     * @param y The row of the graphics which shows the first row of
+     * the area
+     */
+    private void drawImage(Graphics g, Viewport target, int x, int y) {
+    	double[] p = target.locate(shown);
+    	g.drawImage(buf, x + (int) Math.round(p[0]), y + (int) Math.round(p[1]),
+    			(int) Math.round(buf.getWidth() * p[2]), 
+    			(int) Math.round(buf.getHeight() * p[2]), null);
+    }
+    
+    /**
+     * Computes another area of the complex pane with the formula of
+     * the current task; stops the current task
+     * 
+     * @param target The area to compute
+     * @param low <code>true</code> to compute it with low resolution
+     */
+    private void render(Viewport target, boolean low) {
+    	if (task == null || target == null)
+    		return;
+    	if (!low)
+    		refineTimer.stop();
+    	task.cancel(true);
+    	
+    	NewtonFractalCalculator next = new NewtonFractalCalculator(task.getFormula(), 
+    			low ? target.reduce(LOW_RES) : target, this);
+    	RenderFile previous = full != null && full.getViewport().getStep() == 
+    			next.getStepSize() ? full : last;
+    	if (previous != null)
+    		next.reuse(previous);
+    	next.recolor(next.getColorizer().withShading(shadeBox.isSelected()));
+    	if (!low && aaBox.isSelected())
+    		next.setAntiAliasing(SamplePattern.ROTATED_GRID);
+    	
+    	task = next;
+    	centerRe = target.getCenterRe();
+    	centerIm = target.getCenterIm();
+    	startButton.setEnabled(false);
+    	exportBtn.setEnabled(false);
+    	setInputEnabled(false);
+    	
+    	if (!low) {
+    		execute(true);
+    		return;
+    	}
+    	
+    	// The low resolution image is shown when it is finished
+    	if (updater != null)
+    		updater.stop();
+    	if (checkpoint != null)
+    		deleteCheckpoint();
+    	view = rendering = target;
+    	lowRes = true;
+    	task.execute();
+    	repaint();
+    }
+    
+    /**
+     * Shows another area of the complex pane at once by moving the
+     * current image; it is computed with low resolution and in full
+     * resolution when the mouse gesture stops
+     * 
+     * @param target The area to show
+     */
+    private void navigate(Viewport target) {
+    	if (task == null || view == null)
+    		return;
+    	try {
+    		Precision.forViewport(target);
+    	} catch (IllegalArgumentException e) {
+    		// Zoomed in too deep
+    		return;
+    	}
+    	
+    	view = target;
+    	centerRe = target.getCenterRe();
+    	centerIm = target.getCenterIm();
+    	repaint();
+    	
+    	// A running low resolution pass is finished first
+    	if (!lowRes || task.isDone())
+    		render(target, true);
+    	refineTimer.restart();
+    }
+
+    /**
+     * Moves the image by a fraction of its size; only the newly
+     * exposed pixels are computed, all others are taken over from
+     * the last render
+     * 
+     * @param dx Horizontal direction (-1, 0 or 1)
+     * @param dy Vertical direction (-1, 0 or 1)
+     */
+    private void pan(int dx, int dy) {
+    	if (view != null)
+    		render(view.pan(dx * view.getWidth() / PAN_FRACTION, 
+    				dy * view.getHeight() / PAN_FRACTION), false);
     }
 
     /**
@@ -289,36 +666,44 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
         	start();
         }
         
+        // Handle the shading toggle: only the colors change
+        if ("shade".equals(evt.getActionCommand()) && task != null) {
+        	task.recolor(task.getColorizer().withShading(shadeBox.isSelected()));
+        	if (!lowRes) {
+        		buf = task.snapshot(buf);
+        		thumbnail.update(buf);
+        	}
+        	repaint();
+        	previewPane.repaint();
+        }
+        
         // Handle the export image button
         if ("export".equals(evt.getActionCommand())) {
         	// Show a file chooser dialog
         	JFileChooser fc = new JFileChooser();
         	fc.setAcceptAllFileFilterUsed(false);
-        	fc.setFileFilter(new FileFilter() {
-				
-				@Override
-				public String getDescription() {
-					return "PNG file (*.png)";
-				}
-				
-				@Override
-				public boolean accept(File f) {
-					return f.getName().endsWith(".png");
-				}
-			});
+        	FileFilter png = new ExtensionFilter("PNG file (*.png)", ".png");
+        	fc.addChoosableFileFilter(png);
+        	fc.addChoosableFileFilter(new ExtensionFilter("Render file (*" + 
+        			RenderFile.EXTENSION + ")", RenderFile.EXTENSION));
+        	fc.setFileFilter(png);
         	int retval = fc.showSaveDialog(NewtonFractal2.this);
         	
         	// Export the image if approved by the user
             if (retval == JFileChooser.APPROVE_OPTION) {
                 File file = fc.getSelectedFile();
+                String ext = ((ExtensionFilter) fc.getFileFilter()).extension;
                
                 // Append file extension if missing
-                if (!file.getName().endsWith(".png"))
-                	file = new File(file.getAbsolutePath() + ".png");
+                if (!file.getName().endsWith(ext))
+                	file = new File(file.getAbsolutePath() + ext);
                 
-                // Try to write the image out
+                // Try to write the image or the render out
                 try {
-    				ImageIO.write(task.get(), "png", file);
+                	if (RenderFile.EXTENSION.equals(ext))
+                		task.toRenderFile().write(file.toPath());
+                	else
+                		task.exportImage(file);
     			} catch (Exception e) {
     				JOptionPane.showMessageDialog(this, 
     					"Export failed (" + e + ")", 
@@ -326,28 +711,103 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
     			}
             }
         }
+        
+        // Handle the open button
+        if ("open".equals(evt.getActionCommand())) {
+        	JFileChooser fc = new JFileChooser();
+        	fc.setAcceptAllFileFilterUsed(false);
+        	fc.setFileFilter(new ExtensionFilter("Render file (*" + 
+        			RenderFile.EXTENSION + ")", RenderFile.EXTENSION));
+        	
+        	if (fc.showOpenDialog(NewtonFractal2.this) == JFileChooser.APPROVE_OPTION)
+        		open(fc.getSelectedFile());
+        }
+    }
+    
+    /**
+     * Opens a saved render; nothing needs to be computed
+     * 
+     * @param file The render file
+     */
+    private void open(File file) {
+    	NewtonFractalCalculator opened;
+    	try {
+    		opened = new NewtonFractalCalculator(RenderFile.read(file.toPath()), this);
+    	} catch (Exception e) {
+    		JOptionPane.showMessageDialog(this, 
+    				"Couldn't open the render (" + e + ")", 
+    				"Error", JOptionPane.ERROR_MESSAGE);
+    		return;
+    	}
+    	
+    	refineTimer.stop();
+    	if (task != null)
+    		task.cancel(true);
+    	task = opened;
+    	shadeBox.setSelected(task.getColorizer().isShading());
+    	aaBox.setSelected(task.getAntiAliasing() != null);
+    	formula.setText(task.getFormula());
+    	centerRe = task.getViewport().getCenterRe();
+    	centerIm = task.getViewport().getCenterIm();
+    	range.setValue(task.getImage().getWidth() / 2 * task.getStepSize());
+    	startButton.setEnabled(false);
+    	exportBtn.setEnabled(false);
+    	setInputEnabled(false);
+    	taskOutput.setText("");
+    	execute(false);
+    }
+    
+    /**
+     * Deletes the checkpoint of the finished or cancelled render,
+     * which doesn't need to be resumed
+     */
+    private void deleteCheckpoint() {
+    	try {
+    		checkpoint.delete();
+    	} catch (IOException e) {
+    		// It is offered again on the next start
+    	}
     }
     
     /**
      * Invoked when task's progress property changes
      */
     public void propertyChange(PropertyChangeEvent evt) {
-    	// Event to update the progress bar
-        if ("progress" == evt.getPropertyName()) {
-            repaint();
-        } 
-    	
-        // Event when image calculation is finished
-        if (task.isDone()) {
+        // Event when image calculation is finished; the progress
+    	// is painted by the frame updater
+        if ("state".equals(evt.getPropertyName()) && evt.getSource() == task 
+        		&& task.isDone()) {
+        	if (updater != null)
+        		updater.stop();
+        	if (task.isCancelled())
+        		return;
+        	
         	// Display the generated image in the view port
         	try {
-        		buf = task.get();
+        		task.get();
+        		if (!lowRes && checkpoint != null)
+        			deleteCheckpoint();
+        		buf = task.snapshot(lowRes ? null : buf);
+        		thumbnail.update(buf);
+        		shown = task.getViewport();
+        		last = task.toRenderFile();
+        		if (!lowRes)
+        			full = last;
         		repaint();
+        		previewPane.repaint();
 			} catch (Exception e) {
 				JOptionPane.showMessageDialog(this, 
 					"Couldn't display the generated image (" + e + ")", 
 					"Error", JOptionPane.ERROR_MESSAGE);
 			}
+        	
+        	// The low resolution pass follows the mouse until the
+        	// full resolution is computed
+        	if (lowRes) {
+        		if (rendering != view)
+        			render(view, true);
+        		return;
+        	}
 
         	// Display all computed roots
         	double[][] roots = task.getRoots();
@@ -392,7 +852,7 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
         	
         	@Override
         	public void componentResized(ComponentEvent e) {
-        		newContentPane.previewPane.repaint();
+        		newContentPane.repaint();
         	}
         });
         frame.pack();
@@ -419,6 +879,147 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
         });
     }
     
+    /**
+     * File filter which accepts files by their extension
+     */
+    private static class ExtensionFilter extends FileFilter {
+    	
+    	private final String description, extension;
+    	
+    	public ExtensionFilter(String description, String extension) {
+    		this.description = description;
+    		this.extension = extension;
+    	}
+    	
+		@Override
+		public String getDescription() {
+			return description;
+		}
+		
+		@Override
+		public boolean accept(File f) {
+			return f.isDirectory() || f.getName().endsWith(extension);
+		}
+		
+    }
+    
+    /**
+     * Zooms with the mouse wheel around the mouse pointer and moves
+     * the image by dragging it
+     * 
+     * @author maxstrauch
+     */
+    private class Navigator extends MouseAdapter {
+    	
+    	/**
+    	 * The last position of the mouse while dragging
+    	 */
+    	private Point drag;
+    	
+    	@Override
+    	public void mousePressed(MouseEvent e) {
+    		drag = e.getPoint();
+    	}
+    	
+    	@Override
+    	public void mouseReleased(MouseEvent e) {
+    		drag = null;
+    	}
+    	
+    	@Override
+    	public void mouseDragged(MouseEvent e) {
+    		if (drag == null || view == null)
+    			return;
+    		
+    		int dx = drag.x - e.getX(), dy = drag.y - e.getY();
+    		drag = e.getPoint();
+    		if (dx != 0 || dy != 0)
+    			navigate(view.pan(dx, dy));
+    	}
+    	
+    	@Override
+    	public void mouseWheelMoved(MouseWheelEvent e) {
+    		if (view == null)
+    			return;
+    		
+    		navigate(view.zoom(e.getX() - xpos, e.getY() - ypos, 
+    				Math.pow(WHEEL_ZOOM, e.getPreciseWheelRotation())));
+    	}
+    	
+    }
+    
+    /**
+     * Collects the tiles finished by the worker threads and copies
+     * them into the shown image at most every {@link #FRAME_INTERVAL} ms;
+     * only the changed parts are repainted
+     * 
+     * @author maxstrauch
+     */
+    private class FrameUpdater implements TileListener, ActionListener {
+    	
+    	private final NewtonFractalCalculator calculator;
+    	
+    	private final Timer timer = new Timer(FRAME_INTERVAL, this);
+    	
+    	/**
+    	 * The tiles finished since the last frame; guarded by this
+    	 */
+    	private List<Rectangle> dirty = new ArrayList<Rectangle>();
+    	
+    	/**
+    	 * Creates the updater and starts it
+    	 * 
+    	 * @param calculator The render to show
+    	 */
+    	public FrameUpdater(NewtonFractalCalculator calculator) {
+    		this.calculator = calculator;
+    		calculator.addTileListener(this);
+    		timer.start();
+    	}
+    	
+    	/**
+    	 * Stops the updates
+    	 */
+    	public void stop() {
+    		timer.stop();
+    		calculator.removeTileListener(this);
+    	}
+
+		public synchronized void tileFinished(RenderResult result, Tile tile) {
+			dirty.add(new Rectangle(tile.getX(), tile.getY(), 
+					tile.getWidth(), tile.getHeight()));
+		}
+		
+		/**
+		 * Returns the tiles finished since the last call
+		 */
+		private synchronized List<Rectangle> takeDirty() {
+			List<Rectangle> tiles = dirty;
+			dirty = new ArrayList<Rectangle>();
+			return tiles;
+		}
+
+		public void actionPerformed(ActionEvent e) {
+			if (calculator != task) {
+				stop();
+				return;
+			}
+			
+			List<Rectangle> tiles = takeDirty();
+			for (Rectangle tile : tiles) {
+				calculator.snapshot(buf, tile);
+				thumbnail.update(buf, tile);
+				repaint(xpos + tile.x, ypos + tile.y, tile.width, tile.height);
+			}
+			if (!tiles.isEmpty())
+				previewPane.repaint();
+			
+			// The statistics
+			repaint(0, 0, getWidth(), STATUS_HEIGHT);
+		}
+    	
+    }
+    
     /**
      * Simple preview panel to navigate through the fractal
      * 
@@ -435,36 +1036,52 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
 		 */
 		public PreviewPane() {
     		addMouseListener(this);
-    		setPreferredSize(new Dimension(150, 150));
-    		setSize(new Dimension(150, 150));
-    		setMinimumSize(new Dimension(150, 150));
-    		setMaximumSize(new Dimension(150, 150));
+    		setPreferredSize(new Dimension(PREVIEW_SIZE, PREVIEW_SIZE));
+    		setSize(new Dimension(PREVIEW_SIZE, PREVIEW_SIZE));
+    		setMinimumSize(new Dimension(PREVIEW_SIZE, PREVIEW_SIZE));
+    		setMaximumSize(new Dimension(PREVIEW_SIZE, PREVIEW_SIZE));
     	}
     	
+		/**
+		 * Computes the visible part of the image; small images are
+		 * centered in the main panel
+		 * 
+		 * @return <code>true</code> if the visible part changed
+		 */
+		public boolean updateArea() {
+			if (view == null || mainDimension == null)
+				return false;
+			
+			int width = area.width, height = area.height;
+    		area.width = (int) Math.round(getWidth() * Math.min(1.0, 
+    				((double) mainDimension.width)/view.getWidth()));
+    		area.height = (int) Math.round(getHeight() * Math.min(1.0, 
+    				((double) mainDimension.height)/view.getHeight()));
+    		
+    		if (area.width == getWidth())
+        		xpos = (mainDimension.width-view.getWidth())/2;
+    		
+    		if (area.height == getHeight())
+        		ypos = (mainDimension.height-view.getHeight())/2;
+    		
+    		return width != area.width || height != area.height;
+		}
+    	
     	@Override
     	public void paint(Graphics g) {
-    		if (task == null || buf == null)
+    		if (task == null || buf == null || mainDimension == null)
     			return;
     		
     		// Fill the background
     		g.setColor(Color.black);
     		g.fillRect(0, 0, getWidth(), getHeight());
     		
-    		// Draw the preview image
-    		g.drawImage(buf, 0, 0, getWidth(), getHeight(), null);
+    		// Draw the preview image from the thumbnail; scaling the
+    		// whole image on every repaint is too slow for large renders
+    		g.drawImage(thumbnail.getImage(), 0, 0, getWidth(), getHeight(), null);
     		
     		// Draw the view port
-    		area.width = (int) Math.round(getWidth() * Math.min(1.0, 
-    				((double) mainDimension.width)/buf.getWidth()));
-    		area.height = (int) Math.round(getHeight() * Math.min(1.0, 
-    				((double) mainDimension.height)/buf.getHeight()));
-    		
-    		if (area.width == getWidth())
-        		xpos = (mainDimension.width-buf.getWidth())/2;
-    		
-    		if (area.height == getHeight())
-        		ypos = (mainDimension.height-buf.getHeight())/2;
-    		
+    		updateArea();
     		g.setColor(Color.red);
     		g.drawRect(area.x, area.y, area.width-1, area.height-1);
     		
@@ -472,8 +1089,6 @@ public class NewtonFractal2 extends JPanel implements ActionListener, PropertyCh
     		g.setColor(Color.black);
     		g.drawRect(0, 0, getWidth()-1, getHeight()-1);
     		
-    		// Repaint the main panel
-    		NewtonFractal2.this.repaint();
     	}
     	
     	@Override
@@ -15,11 +15,24 @@
  */
 package operations;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
 import java.beans.PropertyChangeListener;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.imageio.ImageIO;
 import javax.swing.SwingWorker;
 
 /**
@@ -42,37 +55,132 @@ public class NewtonFractalCalculator extends SwingWorker<BufferedImage, Void> {
 	};
 	
 	/**
-	 * Regular expression to match the input formula
+	 * Number of rows and columns of the grid used to find the
+	 * roots before the computation starts
 	 */
-	public static final String INPUT_PATTERN = "[x0-9\\-\\+\\*/\\^\\(\\)\\.]+";
+	private static final int SEED_GRID = 16;
+	
+	/**
+	 * Width and height of the tiles the image is split into
+	 */
+	private static final int TILE_SIZE = 32;
+	
+	/**
+	 * Estimated cost of a pixel besides its iterations (in
+	 * iterations)
+	 */
+	private static final int PIXEL_OVERHEAD = 2;
+	
+	/**
+	 * Number of supersampled pixels computed at once
+	 */
+	private static final int SAMPLE_TILE = 256;
 
 	/**
 	 * Attributes for plot parameters
 	 */
-	private double range, stepSize, calculationSteps, totalSteps;
+	private double stepSize, calculationSteps;
 	
 	/**
-	 * Stores the size of the image and the index of
-	 * the current color
+	 * Stores the size of the image
 	 */
-	private int size, colorCnt = 0;
+	private int width, height;
 	
 	private long started, ended;
 	
 	/**
-	 * The resulting image
+	 * The number of pixels processed
+	 */
+	private final AtomicLong totalSteps = new AtomicLong();
+	
+	/**
+	 * The number of pixels and samples actually computed
+	 */
+	private final AtomicLong computed = new AtomicLong();
+	
+	/**
+	 * The number of pixels taken over from a previous render
+	 */
+	private int reused;
+	
+	/**
+	 * The resulting image; created on demand from the result
 	 */
 	private BufferedImage resultImage;
 	
+	/**
+	 * Whether the image is created at the end of the computation
+	 */
+	private boolean createImage = true;
+	
+	/**
+	 * The threads to compute with or <code>null</code> to start new
+	 * threads for this render
+	 */
+	private ForkJoinPool pool;
+	
+	/**
+	 * The raw result (root id and iteration count per pixel)
+	 */
+	private RenderResult result;
+	
+	/**
+	 * Creates the image from the result
+	 */
+	private Colorizer colorizer = new Colorizer();
+	
 	/**
 	 * The function to work on
 	 */
 	private String f/*, fd*/;
 	
 	/**
-	 * Color index
+	 * The compiled function
+	 */
+	private Formula formula;
+	
+	/**
+	 * The area of the complex pane to compute
+	 */
+	private Viewport viewport;
+	
+	/**
+	 * The precision tier of the solver
 	 */
-	private Map<double[], Integer> colorIndex;
+	private Precision precision;
+	
+	/**
+	 * The iteration scheme
+	 */
+	private Solver solver = Solver.NEWTON;
+	
+	/**
+	 * The sample pattern to anti-alias the borders between the
+	 * roots; <code>null</code> if switched off
+	 */
+	private SamplePattern antiAliasing;
+	
+	/**
+	 * One solver per thread of the running computation
+	 */
+	private ThreadLocal<PixelSolver> solvers;
+	
+	/**
+	 * The metrics of the running computation
+	 */
+	private RenderMetrics.Render metrics;
+	
+	/**
+	 * Get notified about finished tiles
+	 */
+	private final List<TileListener> tileListeners = 
+			new CopyOnWriteArrayList<TileListener>();
+	
+	/**
+	 * The publishers of the tiles which are closed at the end
+	 */
+	private final List<TilePublisher> publishers = 
+			new CopyOnWriteArrayList<TilePublisher>();
 	
 	/**
 	 * Constructs a new Newton method calculator which calculates
@@ -90,35 +198,210 @@ public class NewtonFractalCalculator extends SwingWorker<BufferedImage, Void> {
 	 */
 	public NewtonFractalCalculator(String f, /*String fd,*/ double rangeOffset, 
 			double stepSize, PropertyChangeListener pcl) {
+		this(f, Viewport.of(rangeOffset, stepSize), pcl);
+	}
+	
+	/**
+	 * Constructs a new Newton method calculator for an arbitrary
+	 * area of the complex pane. The precision is selected by the
+	 * pixel size, so the viewport may be zoomed in far beyond the
+	 * precision of double numbers
+	 * 
+	 * @param f The function
+	 * @param viewport The area to compute
+	 * @param pcl The {@link PropertyChangeListener} to attach
+	 */
+	public NewtonFractalCalculator(String f, Viewport viewport,
+			PropertyChangeListener pcl) {
 		
-		// Input check
-		if (!f.matches(INPUT_PATTERN)/* || !fd.matches(INPUT_PATTERN)*/ || 
-				rangeOffset < 0 || stepSize < 0 || stepSize > rangeOffset)
-			throw new IllegalArgumentException("At least one of the " +
-					"supplied arguments is bad");
-		
-		// Set attributes
+		// Set attributes; compiling checks the formula
 		this.f = f;
-//		this.fd = fd;
-		this.range = rangeOffset;
-		this.stepSize = stepSize;
+		this.formula = Formula.compile(f);
+		this.viewport = viewport;
+		this.stepSize = viewport.getStep();
+		this.precision = Precision.forViewport(viewport);
 		
 		// Calculate the number of calculation steps to perform
-		size = (2 * (int) Math.round(range/stepSize));
-		calculationSteps = size*size;
-		
-		// Create the image
-		resultImage = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		width = viewport.getWidth();
+		height = viewport.getHeight();
+		calculationSteps = (double) width * height;
 		
-		// Create the color index
-		colorIndex = new HashMap<double[], Integer>();
-		colorIndex.put(new double[] {Double.NaN, Double.NaN}, 0x0);
-		colorIndex.put(new double[] {0, 0}, 0x0);
+		// Create the result buffer
+		result = new RenderResult(width, height);
 		
 		// Add the property change listener
 		addPropertyChangeListener(pcl);
 	}
 	
+	/**
+	 * Constructs a calculator for a render loaded from a file;
+	 * only pixels which are missing in the file are computed, with
+	 * the solver, precision, anti-aliasing and shading of the file
+	 * 
+	 * @param file The loaded render
+	 * @param pcl The {@link PropertyChangeListener} to attach
+	 */
+	public NewtonFractalCalculator(RenderFile file, PropertyChangeListener pcl) {
+		this(file.getFormula(), file.getViewport(), pcl);
+		solver = Solver.byName(file.getSolver());
+		precision = file.getPrecision();
+		antiAliasing = file.getAntiAliasing();
+		colorizer = colorizer.withShading(file.isShading());
+		result = file.getResult();
+		reused = result.getKnownCount();
+	}
+	
+	/**
+	 * Returns the render with all settings to save it
+	 * 
+	 * @return The render file
+	 */
+	public RenderFile toRenderFile() {
+		return new RenderFile(f, viewport, solver.toString(), precision,
+				AutoDerivateNewton.MAX_ITERATIONS, AutoDerivateNewton.EPSILON, 
+				antiAliasing, getColorizer().isShading(), result);
+	}
+	
+	/**
+	 * Takes over all pixels of a previous render of the same
+	 * formula and solver which show exactly the same points as
+	 * pixels of this render (e.g. after zooming in by an integer
+	 * factor), so only the new pixels are computed; has to be
+	 * called before the computation starts
+	 * 
+	 * @param previous The previous render
+	 * @return The number of pixels taken over
+	 */
+	public synchronized int reuse(RenderFile previous) {
+		if (!f.equals(previous.getFormula()) || 
+				!solver.toString().equals(previous.getSolver()))
+			return 0;
+		
+		result = RenderResult.remap(previous.getResult(), previous.getViewport(), 
+				viewport);
+		reused = result.getKnownCount();
+		repaint();
+		return reused;
+	}
+	
+	/**
+	 * Creates a calculator for this render moved by some pixels.
+	 * All pixels which stay visible are taken over, so only the newly
+	 * exposed rows and columns are computed
+	 * 
+	 * @param dx Number of columns to move (positive: to the right)
+	 * @param dy Number of rows to move (positive: down)
+	 * @param pcl The {@link PropertyChangeListener} to attach
+	 * @return The new calculator; not started yet
+	 */
+	public NewtonFractalCalculator pan(int dx, int dy, PropertyChangeListener pcl) {
+		NewtonFractalCalculator moved = new NewtonFractalCalculator(f, 
+				viewport.pan(dx, dy), pcl);
+		moved.solver = solver;
+		moved.antiAliasing = antiAliasing;
+		moved.colorizer = getColorizer();
+		moved.reuse(toRenderFile());
+		return moved;
+	}
+	
+	/**
+	 * Overrides the automatically selected precision; has to be
+	 * called before the computation starts
+	 * 
+	 * @param precision The precision tier
+	 * @throws IllegalArgumentException If the tier doesn't support
+	 * the solver
+	 */
+	public void setPrecision(Precision precision) {
+		precision.checkSolver(solver);
+		this.precision = precision;
+	}
+	
+	public Precision getPrecision() {
+		return precision;
+	}
+	
+	/**
+	 * Selects the iteration scheme; has to be called before the
+	 * computation starts. Only the Newton method is available
+	 * beyond double precision, so the precision has to be set first
+	 * 
+	 * @param solver The scheme
+	 * @throws IllegalArgumentException If the precision doesn't
+	 * support the scheme
+	 */
+	public void setSolver(Solver solver) {
+		precision.checkSolver(solver);
+		this.solver = solver;
+	}
+	
+	public Solver getSolver() {
+		return solver;
+	}
+	
+	/**
+	 * Switches anti-aliasing on or off; has to be called before the
+	 * computation starts. After the image is computed all pixels with
+	 * a neighbor of another root are computed again with the samples
+	 * of the pattern
+	 * 
+	 * @param pattern The sample pattern or <code>null</code> to
+	 * switch anti-aliasing off
+	 */
+	public void setAntiAliasing(SamplePattern pattern) {
+		this.antiAliasing = pattern;
+	}
+	
+	public SamplePattern getAntiAliasing() {
+		return antiAliasing;
+	}
+	
+	/**
+	 * Adds a listener which is called by the worker threads
+	 * whenever a tile is finished
+	 * 
+	 * @param listener The listener
+	 */
+	public void addTileListener(TileListener listener) {
+		tileListeners.add(listener);
+	}
+	
+	public void removeTileListener(TileListener listener) {
+		tileListeners.remove(listener);
+	}
+	
+	/**
+	 * Creates a publisher of the finished tiles of this render as
+	 * images; see {@link TilePublisher}. It is closed when the
+	 * render ends
+	 * 
+	 * @return The publisher
+	 */
+	public TilePublisher publishTiles() {
+		TilePublisher publisher = new TilePublisher(getColorizer(), this);
+		publishers.add(publisher);
+		addTileListener(publisher);
+		return publisher;
+	}
+	
+	public Viewport getViewport() {
+		return viewport;
+	}
+	
+	/**
+	 * Returns the function of the fractal
+	 */
+	public String getFormula() {
+		return f;
+	}
+	
+	/**
+	 * Returns the size of one pixel
+	 */
+	public double getStepSize() {
+		return stepSize;
+	}
+	
 	/**
 	 * Returns the associated color for the given complex
 	 * root found by the Newton method; if the given complex
@@ -128,43 +411,27 @@ public class NewtonFractalCalculator extends SwingWorker<BufferedImage, Void> {
 	 * @return The color associated
 	 */
 	public int getColor(double[] root) {
-		// Check if there is already a color associated
-		for (double[] value : colorIndex.keySet())
-			if (Math.abs(value[0]-root[0]) + Math.abs(value[1]-root[1]) < 1e-4 ||
-					((Double.isNaN(value[0]) && Double.isNaN(root[0])) ||
-							(Double.isNaN(value[1]) && Double.isNaN(root[1]))))
-				return colorIndex.get(value);
-		
-		// Create a new entry for the new root
-		int color = COLORS[colorCnt];
-		colorIndex.put(root, color);
-		if (colorCnt < COLORS.length)
-			colorCnt++;
-		
-		// Return the color
-		return color;
+		RootRegistry registry = result.getRegistry();
+		return colorizer.getColor(registry, registry.register(root));
 	}
 	
 	/**
 	 * Returns an array of all complex roots found by the Newton
 	 * method
 	 * 
-	 * @return A list of all complex roots and the complex number
-	 * NaN
+	 * @return A list of all complex roots
 	 */
 	public double[][] getRoots() {
-		double[][] roots = new double[0][];
-		
-		for (double[] r : colorIndex.keySet()) {
-			if (!Double.isNaN(r[0]) && !Double.isNaN(r[1]) && 
-					!(r[0] == 0 && r[1] == 0)) {
-				System.arraycopy(roots, 0, roots = new double[roots.length+1][], 
-						0, roots.length-1);
-				roots[roots.length-1] = r;
-			}
-		}
-		
-		return roots;
+		return result.getRegistry().toArray();
+	}
+	
+	/**
+	 * Returns the raw result of the computation
+	 * 
+	 * @return May be not finished yet
+	 */
+	public RenderResult getResult() {
+		return result;
 	}
 	
 	/**
@@ -172,51 +439,558 @@ public class NewtonFractalCalculator extends SwingWorker<BufferedImage, Void> {
 	 * 
 	 * @return May be not finished yet
 	 */
-	public BufferedImage getImage() {
+	public synchronized BufferedImage getImage() {
+		if (resultImage == null)
+			resultImage = colorizer.colorize(result);
 		return resultImage;
 	}
 	
+	/**
+	 * Copies the current image into another image. The image is
+	 * painted by the worker threads, so this is the safe way to show
+	 * it while the computation is running
+	 *
+	 * @param target The image to copy into; may be <code>null</code>
+	 * @return The target or a new image if it has not the right size
+	 */
+	public synchronized BufferedImage snapshot(BufferedImage target) {
+		BufferedImage image = getImage();
+		ColorModel model = image.getColorModel();
+		if (target == null || target.getWidth() != image.getWidth()
+				|| target.getHeight() != image.getHeight()
+				|| !target.getColorModel().equals(model))
+			target = new BufferedImage(model, model.createCompatibleWritableRaster(
+					image.getWidth(), image.getHeight()), false, null);
+
+		snapshot(target, new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+		return target;
+	}
+
+	/**
+	 * Copies a part of the current image into another image of the
+	 * same size, usually created by {@link #snapshot(BufferedImage)};
+	 * images with other color models are converted
+	 *
+	 * @param target The image to copy into
+	 * @param area The part to copy
+	 */
+	public synchronized void snapshot(BufferedImage target, Rectangle area) {
+		BufferedImage image = getImage();
+		if (!target.getColorModel().equals(image.getColorModel())) {
+			target.setRGB(area.x, area.y, area.width, area.height, image.getRGB(area.x, 
+					area.y, area.width, area.height, null, 0, area.width), 0, area.width);
+			return;
+		}
+		
+		Raster raster = image.getRaster();
+		target.getRaster().setDataElements(area.x, area.y, area.width, area.height,
+				raster.getDataElements(area.x, area.y, area.width, area.height, null));
+	}
+
+	/**
+	 * Paints the current result again with another colorizer; the
+	 * fractal itself isn't computed again
+	 * 
+	 * @param colorizer The new colorizer
+	 * @return The recolored image
+	 */
+	public synchronized BufferedImage recolor(Colorizer colorizer) {
+		this.colorizer = colorizer;
+		repaint();
+		return getImage();
+	}
+	
+	/**
+	 * Paints the image again if it is in use; an indexed image is
+	 * replaced if the colors don't fit into its palette any more
+	 */
+	private synchronized void repaint() {
+		if (resultImage == null)
+			return;
+		if (colorizer.canColorize(result, resultImage))
+			colorizer.colorizeParallel(result, resultImage);
+		else
+			resultImage = colorizer.colorize(result);
+	}
+	
+	/**
+	 * Sets whether the image is created at the end of the computation
+	 * (default); renders which are exported tile by tile don't need
+	 * the image of the whole render
+	 * 
+	 * @param createImage If <code>false</code> the computation
+	 * returns <code>null</code>
+	 */
+	public void setCreateImage(boolean createImage) {
+		this.createImage = createImage;
+	}
+	
+	/**
+	 * Sets the threads to compute with; by default every render
+	 * starts its own threads and stops them when it is finished,
+	 * which is a noticeable part of the time of small renders
+	 * 
+	 * @param pool The threads (kept running after the render) or
+	 * <code>null</code>
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
+	public synchronized Colorizer getColorizer() {
+		return colorizer;
+	}
+	
 	@Override
 	protected BufferedImage doInBackground() throws Exception {
-		int xcnt = 0, ycnt = 0;
-		totalSteps = 0;
+		Throwable failure = null;
+		try {
+			return render();
+		} catch (Throwable e) {
+			failure = e;
+			throw e;
+		} finally {
+			for (TilePublisher publisher : publishers) {
+				removeTileListener(publisher);
+				if (failure != null)
+					publisher.closeExceptionally(failure);
+				else if (isCancelled())
+					publisher.closeExceptionally(new CancellationException());
+				else
+					publisher.close();
+			}
+			publishers.clear();
+		}
+	}
+	
+	/**
+	 * Computes all pixels
+	 * 
+	 * @return The image or <code>null</code> if it isn't created
+	 */
+	private BufferedImage render() throws Exception {
+		totalSteps.set(0);
 		started = System.currentTimeMillis();
 		ended = -1;
+		metrics = RenderMetrics.getInstance().renderStarted(result.getRegistry());
+		computed.set(0);
+		RenderEvent event = new RenderEvent();
+		event.begin();
+		ForkJoinPool pool = null;
+		try {
+			// One solver per thread: creating a solver may be expensive
+			solvers = new ThreadLocal<PixelSolver>() {
+				@Override
+				protected PixelSolver initialValue() {
+					return precision.createSolver(formula, viewport, solver);
+				}
+			};
+			
+			// Find the roots of a coarse grid first, so the ids (and
+			// colors) of the roots don't depend on the thread timing
+			seedRoots();
+			
+			// The Newton method can stop in the disks around the roots in
+			// which it surely converges
+			if (precision == Precision.DOUBLE && solver == Solver.NEWTON) {
+				final ConvergenceDisks disks = ConvergenceDisks.of(formula, 
+						result.getRegistry().toArray());
+				solvers = new ThreadLocal<PixelSolver>() {
+					@Override
+					protected PixelSolver initialValue() {
+						BatchNewton newton = (BatchNewton) precision.createSolver(
+								formula, viewport, solver);
+						newton.setDisks(disks);
+						return newton;
+					}
+				};
+			}
+			
+			// Formulas with real coefficients are symmetric, so only the
+			// pixels on one side of the mirror lines are computed
+			Symmetry symmetry = Symmetry.of(formula, viewport);
+			List<Tile> tiles = new ArrayList<Tile>();
+			TileScheduler.tiles(symmetry == null ? new Tile(0, 0, width, height)
+					: symmetry.getRegion(), TILE_SIZE, tiles);
+			
+			// Estimate the cost of the tiles and distribute them among
+			// the threads
+			pool = this.pool != null ? this.pool 
+					: new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+			int threads = pool.getParallelism();
+			TileScheduler scheduler = new TileScheduler(tiles, estimateCosts(tiles), threads);
+			scheduler.run(pool, new TileScheduler.Worker() {
+				@Override
+				public void render(Tile tile) {
+					renderTile(tile);
+				}
+			});
+			
+			if (symmetry != null && !isCancelled())
+				mirror(symmetry, pool, threads);
+			
+			if (antiAliasing != null && !isCancelled())
+				supersample(pool, threads);
+		} finally {
+			if (pool != null && pool != this.pool)
+				pool.shutdownNow();
+			metrics.finished();
+			if (event.shouldCommit()) {
+				event.formula = f;
+				event.width = width;
+				event.height = height;
+				event.precision = precision.toString();
+				event.antiAliasing = antiAliasing == null ? null : antiAliasing.toString();
+				event.pixels = computed.get();
+				event.cancelled = isCancelled();
+				event.commit();
+			}
+		}
 		
-		// Loop through the image area and calculate for every
-		// point the root
-		for (double y = -range; y <= range; y += stepSize) {
-			if (ycnt >= size)
+		super.setProgress(100);
+		ended = System.currentTimeMillis();
+		return createImage ? getImage() : null;
+	}
+	
+	/**
+	 * Registers the roots found for a coarse grid of pixels
+	 */
+	private void seedRoots() {
+		PixelSolver solver = solvers.get();
+		double[] r = new double[3];
+		for (int j = 0; j < SEED_GRID; j++) {
+			for (int i = 0; i < SEED_GRID; i++) {
+				solver.solve((2*i + 1) * width / (2*SEED_GRID), 
+						(2*j + 1) * height / (2*SEED_GRID), r);
+				result.getRegistry().register(r);
+			}
+		}
+	}
+	
+	/**
+	 * Estimates the cost of every tile by computing its center
+	 * pixel (a pilot pass): the cost is the number of pixels still
+	 * unknown times the iterations of the center
+	 * 
+	 * @param tiles The tiles
+	 * @return The cost of each tile; <code>0</code> if the tile
+	 * is already known
+	 */
+	private long[] estimateCosts(List<Tile> tiles) {
+		PixelSolver solver = solvers.get();
+		RootRegistry registry = result.getRegistry();
+		double[] r = new double[3];
+		long[] costs = new long[tiles.size()];
+		
+		for (int i = 0; i < costs.length && !isCancelled(); i++) {
+			Tile tile = tiles.get(i);
+			int unknown = countUnknown(tile);
+			if (unknown == 0)
 				continue;
 			
-			for (double x = -range; x <= range; x += stepSize) {
-				if (xcnt >= size)
+			int x = tile.getX() + tile.getWidth() / 2, y = tile.getY() + tile.getHeight() / 2;
+			if (!result.isKnown(x, y)) {
+				solver.solve(x, y, r);
+				result.set(x, y, registry.register(r), (int) r[2]);
+				computed.incrementAndGet();
+			}
+			costs[i] = (long) unknown * (result.getIterations(x, y) + PIXEL_OVERHEAD);
+		}
+		
+		return costs;
+	}
+	
+	/**
+	 * Counts the unknown pixels of a tile; a tile without any is
+	 * reported as finished
+	 * 
+	 * @param tile The tile
+	 * @return The number of unknown pixels
+	 */
+	private int countUnknown(Tile tile) {
+		int unknown = 0;
+		for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++)
+			for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++)
+				if (!result.isKnown(x, y))
+					unknown++;
+		
+		if (unknown == 0) {
+			totalSteps.addAndGet(tile.size());
+			for (TileListener listener : tileListeners)
+				listener.tileFinished(result, tile);
+		}
+		return unknown;
+	}
+	
+	/**
+	 * Fills the pixels outside of the region of a symmetry with the
+	 * mirror images of the computed pixels
+	 * 
+	 * @param symmetry The symmetry
+	 * @param pool The pool to use
+	 * @param threads The number of threads of the pool
+	 */
+	private void mirror(final Symmetry symmetry, ForkJoinPool pool, int threads) {
+		List<Tile> tiles = symmetry.getMirroredTiles(TILE_SIZE);
+		long[] costs = new long[tiles.size()];
+		for (int i = 0; i < costs.length; i++)
+			costs[i] = countUnknown(tiles.get(i));
+		
+		new TileScheduler(tiles, costs, threads).run(pool, new TileScheduler.Worker() {
+			@Override
+			public void render(Tile tile) {
+				mirrorTile(symmetry, tile);
+			}
+		});
+	}
+	
+	/**
+	 * Copies the mirror images of the unknown pixels of a tile
+	 * 
+	 * @param symmetry The symmetry
+	 * @param tile The tile
+	 */
+	private void mirrorTile(Symmetry symmetry, Tile tile) {
+		if (isCancelled())
+			return;
+		
+		// The ids of the mirrored roots by the mirrored axes (1: re
+		// part negated, 2: im part negated, 3: both)
+		RootRegistry registry = result.getRegistry();
+		int[][] mirrored = new int[4][RootRegistry.MAX_ROOTS + 1];
+		
+		for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++) {
+			int sy = symmetry.getSourceRow(y);
+			for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+				if (result.isKnown(x, y))
 					continue;
 				
-				double[] r = AutoDerivateNewton.newton(f, new double[] {x, y});
-				resultImage.setRGB(xcnt, ycnt, getColor(r));
-				xcnt++;
-				super.setProgress((int) Math.round(100f*(totalSteps++)/calculationSteps));
+				int sx = symmetry.getSourceColumn(x);
+				int axes = (sx != x ? 1 : 0) | (sy != y ? 2 : 0), root = result.getRoot(sx, sy);
+				if (root != RootRegistry.NONE && mirrored[axes][root] == 0) {
+					double[] r = registry.get(root);
+					if ((axes & 1) != 0)
+						r[0] = -r[0];
+					if ((axes & 2) != 0)
+						r[1] = -r[1];
+					mirrored[axes][root] = registry.register(r);
+				}
+				result.set(x, y, root == RootRegistry.NONE ? root : mirrored[axes][root],
+						result.getIterations(sx, sy));
 			}
+		}
+		
+		finishTile(tile);
+	}
+	
+	/**
+	 * Calculates the root for every unknown pixel of a tile
+	 * 
+	 * @param tile The tile
+	 */
+	private void renderTile(Tile tile) {
+		if (isCancelled())
+			return;
+		
+		TileEvent event = new TileEvent();
+		event.begin();
+		PixelSolver solver = solvers.get();
+		RootRegistry registry = result.getRegistry();
+		long[] histogram = new long[RenderMetrics.HISTOGRAM_BUCKETS];
+		double[] r = new double[3];
+		
+		long time = System.nanoTime(), pixels = 0, iterations = 0, nonConverged = 0;
+		
+		// Only compute pixels which are still unknown
+		double[] xs = new double[tile.size()], ys = new double[tile.size()];
+		int n = 0;
+		for (int y = tile.getY(); y < tile.getY() + tile.getHeight(); y++) {
+			for (int x = tile.getX(); x < tile.getX() + tile.getWidth(); x++) {
+				if (!result.isKnown(x, y)) {
+					xs[n] = x;
+					ys[n++] = y;
+				}
+			}
+		}
+		
+		double[] roots = new double[3 * n];
+		if (solver instanceof BatchPixelSolver) {
+			((BatchPixelSolver) solver).solve(xs, ys, n, roots);
+		} else {
+			for (int i = 0; i < n; i++) {
+				solver.solve(xs[i], ys[i], r);
+				System.arraycopy(r, 0, roots, 3 * i, 3);
+			}
+		}
+		
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(roots, 3 * i, r, 0, 3);
+			result.set((int) xs[i], (int) ys[i], registry.register(r), (int) r[2]);
 			
-			xcnt = 0;
-			ycnt++;
+			pixels++;
+			iterations += (int) r[2];
+			histogram[RenderMetrics.bucket((int) r[2])]++;
+			if (Double.isNaN(r[0]))
+				nonConverged++;
+		}
+		metrics.tileFinished(pixels, iterations, nonConverged, 
+				histogram, System.nanoTime() - time);
+		computed.addAndGet(pixels);
+		if (event.shouldCommit()) {
+			event.x = tile.getX();
+			event.y = tile.getY();
+			event.width = tile.getWidth();
+			event.height = tile.getHeight();
+			event.pixels = pixels;
+			event.iterations = iterations;
+			event.nonConverged = nonConverged;
+			event.commit();
 		}
 		
-		super.setProgress(100);
-		ended = System.currentTimeMillis();
-		return resultImage;
+		finishTile(tile);
+	}
+	
+	/**
+	 * Paints a finished tile and reports it
+	 * 
+	 * @param tile The tile
+	 */
+	private void finishTile(Tile tile) {
+		// Paint the finished tile if the image is in use
+		synchronized (this) {
+			if (resultImage != null)
+				colorizer.colorize(result, resultImage, tile.getX(), tile.getY(),
+						tile.getWidth(), tile.getHeight());
+		}
+		
+		for (TileListener listener : tileListeners)
+			listener.tileFinished(result, tile);
+		
+		super.setProgress((int) Math.round(100f*
+				totalSteps.addAndGet(tile.size())/calculationSteps));
+	}
+	
+	/**
+	 * Computes the anti-aliasing samples for all pixels on the
+	 * borders between the roots and repaints them
+	 * 
+	 * @param pool The pool to use
+	 * @param threads The number of threads of the pool
+	 */
+	private void supersample(ExecutorService pool, int threads) throws Exception {
+		// Samples loaded from a file are still valid
+		SampleSet known = result.getSamples();
+		if (known != null && known.getPattern() == antiAliasing)
+			return;
+		
+		final SampleSet samples = SampleSet.forEdges(result, antiAliasing);
+		
+		List<Future<Void>> parts = new ArrayList<Future<Void>>();
+		for (int i = 0; i < threads; i++) {
+			final int from = (int) ((long) i * samples.size() / threads), 
+					to = (int) ((long) (i + 1) * samples.size() / threads);
+			parts.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					supersample(samples, from, to);
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> part : parts)
+			part.get();
+		
+		if (isCancelled())
+			return;
+		
+		result.setSamples(samples);
+		repaint();
+	}
+	
+	/**
+	 * Computes the samples of a range of supersampled pixels
+	 * 
+	 * @param samples The samples
+	 * @param from The first pixel in the sample set
+	 * @param to The pixel after the last pixel
+	 */
+	private void supersample(SampleSet samples, int from, int to) {
+		PixelSolver solver = solvers.get();
+		RootRegistry registry = result.getRegistry();
+		SamplePattern pattern = samples.getPattern();
+		long[] histogram = new long[RenderMetrics.HISTOGRAM_BUCKETS];
+		double[] r = new double[3];
+		
+		for (int k = from; k < to; k += SAMPLE_TILE) {
+			if (isCancelled())
+				return;
+			
+			TileEvent event = new TileEvent();
+			event.begin();
+			long time = System.nanoTime(), iterations = 0, nonConverged = 0;
+			int end = Math.min(to, k + SAMPLE_TILE);
+			for (int i = k; i < end; i++) {
+				int x = samples.getPixel(i) % width, y = samples.getPixel(i) / width;
+				for (int s = 0; s < pattern.size(); s++) {
+					solver.solve(x + pattern.getX(s), y + pattern.getY(s), r);
+					samples.set(i, s, registry.register(r), (int) r[2]);
+					
+					iterations += (int) r[2];
+					histogram[RenderMetrics.bucket((int) r[2])]++;
+					if (Double.isNaN(r[0]))
+						nonConverged++;
+				}
+			}
+			
+			// Every sample counts as a pixel
+			long pixels = (long) (end - k) * pattern.size();
+			metrics.tileFinished(pixels, iterations, nonConverged, histogram, 
+					System.nanoTime() - time);
+			computed.addAndGet(pixels);
+			if (event.shouldCommit()) {
+				event.y = samples.getPixel(k) / width;
+				event.width = width;
+				event.height = samples.getPixel(end - 1) / width - event.y + 1;
+				event.supersampling = true;
+				event.pixels = pixels;
+				event.iterations = iterations;
+				event.nonConverged = nonConverged;
+				event.commit();
+			}
+		}
+	}
+	
+	/**
+	 * Saves the current image as PNG file
+	 * 
+	 * @param file The file to write
+	 * @throws IOException If writing fails
+	 */
+	public void exportImage(File file) throws IOException {
+		ExportEvent event = new ExportEvent();
+		event.begin();
+		ImageIO.write(getImage(), "png", file);
+		if (event.shouldCommit()) {
+			event.file = file.toString();
+			event.format = "png";
+			event.size = file.length();
+			event.commit();
+		}
 	}
 	
 	@Override
 	public String toString() {
-		long steps = Math.round(totalSteps/((
+		long steps = Math.round(totalSteps.get()/((
 				(ended < 0 ? System.currentTimeMillis() : ended)-started)/1000.0));
 		
-		return getProgress() + "% (" + Math.round(totalSteps)
+		return getProgress() + "% (" + totalSteps.get()
 				+ " / " + Math.round(calculationSteps) + ") @ "
-				+ steps + " ops (" + size + " px) " + (ended > 0 ? 
-						(ended-started)/1000.0 + " s" : "");
+				+ steps + " ops (" + width + " px, " + precision + 
+				(solver != Solver.NEWTON ? ", " + solver : "") + 
+				(antiAliasing != null ? ", " + antiAliasing : "") + 
+				(reused > 0 ? ", " + Math.round(100 * reused / calculationSteps) + "% reused" : "") + 
+				") " + 
+				(ended > 0 ? (ended-started)/1000.0 + " s" : "");
 	}
 	
 }
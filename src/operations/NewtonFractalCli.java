@@ -0,0 +1,498 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import helpers.SimpleComplexMath;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line interface to compute fractals without the GUI
+ * and to work with saved renders
+ *
+ * @author maxstrauch
+ */
+public class NewtonFractalCli {
+
+	/**
+	 * Default time between two checkpoints (s)
+	 */
+	private static final long CHECKPOINT_INTERVAL = 60;
+
+	/**
+	 * The usage text
+	 */
+	private static final String USAGE =
+		"Usage: java -cp newtonfractal.jar operations.NewtonFractalCli <command>\n" +
+		"\n" +
+		"Commands:\n" +
+		"  render <formula> <range> <step> <file>  compute a fractal and save it\n" +
+		"  convert <render.nfr> <file>             load a saved render and save it again\n" +
+		"  info <render.nfr>                       print the settings and roots of a render\n" +
+		"  pan <render.nfr> <dx> <dy> <file>       move a saved render by some pixels and\n" +
+		"                                          compute only the newly exposed pixels\n" +
+		"  resume <checkpoint.nfr> <file>          finish a render from its last checkpoint\n" +
+		"  bench <formula> <step>                  measure the cost per pixel of all precisions\n" +
+		"                                          and solvers\n" +
+		"  verify <suite.txt>                      render a regression corpus and compare it with\n" +
+		"                                          the golden renders (exit code 3 on\n" +
+		"                                          regressions) and report the speed against\n" +
+		"                                          the budgets\n" +
+		"  serve                                   keep running and execute the commands of the\n" +
+		"                                          lines read from the standard input or from\n" +
+		"                                          connections to --port; every command is\n" +
+		"                                          answered by its output and \"" + RenderDaemon.DONE + " <exit code>\"\n" +
+		"\n" +
+		"Files ending with .nfr are saved as render files, files ending with .dzi as\n" +
+		"Deep Zoom images (written tile by tile while computing), all others as PNG\n" +
+		"images\n" +
+		"\n" +
+		"Options:\n" +
+		"  --shade                                 darken pixels by iteration count\n" +
+		"  --center <re>,<im>                      center of the image (default 0,0)\n" +
+		"  --precision <name>                      float, double, double-double or perturbation\n" +
+		"                                          (default: selected by the step size; float\n" +
+		"                                          only on request)\n" +
+		"  --solver <name>                         newton, halley, schroeder or relaxed\n" +
+		"                                          (default: newton; the others need double\n" +
+		"                                          precision)\n" +
+		"  --aa <pattern>                          anti-alias the borders between the roots\n" +
+		"                                          with the samples 2x2, rgss, 3x3 or 4x4\n" +
+		"  --reuse <render.nfr>                    take over the pixels of a saved render which\n" +
+		"                                          show exactly the same points\n" +
+		"  --checkpoint <file.nfr>                 save the finished tiles periodically to resume\n" +
+		"                                          the render with resume if it is killed; the\n" +
+		"                                          file is deleted when the render is finished\n" +
+		"  --checkpoint-interval <s>               time between two checkpoints (default " 
+				+ CHECKPOINT_INTERVAL + ")\n" +
+		"  --update                                store new golden renders and budgets (verify)\n" +
+		"  --threshold <percent>                   let cases fail which are slower than their\n" +
+		"                                          budgets by more than this (verify)\n" +
+		"  --port <port>                           accept connections to a port of localhost (serve);\n" +
+		"                                          the first line of a connection has to be the\n" +
+		"                                          token\n" +
+		"  --token <file>                          the file with the token of the connections, only\n" +
+		"                                          readable by its owner; created if it doesn't\n" +
+		"                                          exist (serve, default ~/" + RenderDaemon.TOKEN.getFileName() + ")\n" +
+		"  --dir <dir>                             the directory of the files of the connections\n" +
+		"                                          (serve, default: the current directory)\n" +
+		"  --metrics <ms>                          print the render metrics every <ms> ms\n" +
+		"                                          (also available as JMX MBean\n" +
+		"                                          " + RenderMetrics.NAME + ")\n";
+
+	/**
+	 * Number of pixels per row and column of the benchmark
+	 */
+	private static final int BENCH_SIZE = 32;
+
+	/**
+	 * The positional arguments
+	 */
+	private final List<String> args = new ArrayList<String>();
+
+	/**
+	 * The options (<code>--name value</code> or <code>--name</code>)
+	 */
+	private final Map<String, String> options = new HashMap<String, String>();
+
+	/**
+	 * The checkpoint of the running render
+	 */
+	private Checkpoint checkpoint;
+
+	/**
+	 * The streams for the results and the errors
+	 */
+	private final PrintStream out, err;
+
+	/**
+	 * The threads to compute with or <code>null</code> to start new
+	 * threads for every render
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The directory all files have to be in or <code>null</code> if
+	 * any file may be used
+	 */
+	private final Path dir;
+
+	/**
+	 * Parses the command line
+	 *
+	 * @param argv The command line arguments
+	 */
+	private NewtonFractalCli(String[] argv) {
+		this(argv, System.out, System.err, null, null);
+	}
+
+	/**
+	 * Parses a command line which is executed with other streams
+	 * and threads, e.g. by the {@link RenderDaemon}
+	 *
+	 * @param argv The command line arguments
+	 * @param out The stream for the results
+	 * @param err The stream for the errors
+	 * @param pool The threads to compute with or <code>null</code>
+	 * @param dir The directory (a real path) all files have to be in
+	 * or <code>null</code>
+	 */
+	NewtonFractalCli(String[] argv, PrintStream out, PrintStream err, ForkJoinPool pool,
+			Path dir) {
+		this.out = out;
+		this.err = err;
+		this.pool = pool;
+		this.dir = dir;
+		for (int i = 0; i < argv.length; i++) {
+			if (argv[i].startsWith("--")) {
+				String name = argv[i].substring(2);
+				if (isFlag(name) || i + 1 >= argv.length)
+					options.put(name, "");
+				else
+					options.put(name, argv[++i]);
+			} else {
+				args.add(argv[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the path of a file of the command line; relative paths
+	 * are resolved against the directory of the commands if there is
+	 * one, and the file (following links) has to be in it
+	 *
+	 * @param name The file name
+	 * @return The path
+	 * @throws IllegalArgumentException If the file is outside of the
+	 * directory
+	 */
+	private Path path(String name) throws IOException {
+		if (dir == null)
+			return Paths.get(name);
+
+		Path path = dir.resolve(name).normalize();
+		Path parent = path.getParent();
+		if (!path.startsWith(dir) || path.equals(dir) || parent == null 
+				|| !parent.toRealPath().startsWith(dir) 
+				|| (Files.exists(path) && !path.toRealPath().startsWith(dir)))
+			throw new IllegalArgumentException("Not a file in " + dir + ": " + name);
+		return path;
+	}
+
+	/**
+	 * Checks if an option has no value
+	 */
+	private static boolean isFlag(String name) {
+		return "shade".equals(name) || "update".equals(name);
+	}
+
+	/**
+	 * Executes the command
+	 *
+	 * @return The exit code
+	 */
+	int run() throws Exception {
+		String cmd = args.isEmpty() ? "" : args.get(0);
+
+		if ("render".equals(cmd) && args.size() == 5) {
+			Viewport viewport = center(Viewport.of(Double.parseDouble(args.get(2)),
+					Double.parseDouble(args.get(3))));
+			NewtonFractalCalculator task = new NewtonFractalCalculator(
+					args.get(1), viewport, null);
+			try {
+				if (options.containsKey("precision"))
+					task.setPrecision(Precision.byName(options.get("precision")));
+				if (options.containsKey("solver"))
+					task.setSolver(Solver.byName(options.get("solver")));
+			} catch (IllegalArgumentException e) {
+				// Unknown or incompatible precision and solver
+				err.println(e.getMessage());
+				err.print(USAGE);
+				return 1;
+			}
+			settings(task);
+			if (options.containsKey("reuse"))
+				task.reuse(RenderFile.read(path(options.get("reuse"))));
+			PyramidExporter pyramid = pyramid(task, path(args.get(4)));
+			run(task, options.get("checkpoint"));
+			out.println(task);
+			save(task, pyramid, path(args.get(4)));
+			return 0;
+		}
+
+		if ("convert".equals(cmd) && args.size() == 3) {
+			NewtonFractalCalculator task = new NewtonFractalCalculator(
+					RenderFile.read(path(args.get(1))), null);
+			settings(task);
+			PyramidExporter pyramid = pyramid(task, path(args.get(2)));
+			run(task, options.get("checkpoint"));
+			save(task, pyramid, path(args.get(2)));
+			return 0;
+		}
+
+		if ("resume".equals(cmd) && args.size() == 3) {
+			RenderFile file = RenderFile.read(path(args.get(1)));
+			NewtonFractalCalculator task = new NewtonFractalCalculator(file, null);
+			settings(task);
+			PyramidExporter pyramid = pyramid(task, path(args.get(2)));
+			run(task, options.containsKey("checkpoint") 
+					? options.get("checkpoint") : args.get(1));
+			out.println(task);
+			save(task, pyramid, path(args.get(2)));
+			return 0;
+		}
+
+		if ("pan".equals(cmd) && args.size() == 5) {
+			NewtonFractalCalculator task = new NewtonFractalCalculator(
+					RenderFile.read(path(args.get(1))), null).pan(
+					Integer.parseInt(args.get(2)), Integer.parseInt(args.get(3)), null);
+			settings(task);
+			PyramidExporter pyramid = pyramid(task, path(args.get(4)));
+			run(task, options.get("checkpoint"));
+			out.println(task);
+			save(task, pyramid, path(args.get(4)));
+			return 0;
+		}
+
+		if ("info".equals(cmd) && args.size() == 2) {
+			RenderFile file = RenderFile.read(path(args.get(1)));
+			RenderResult result = file.getResult();
+			out.println("Formula:    " + file.getFormula());
+			out.println("Size:       " + result.getWidth() + " x " + result.getHeight());
+			out.println("Center:     " + file.getViewport().getCenterRe() + " " 
+					+ file.getViewport().getCenterIm());
+			out.println("Step size:  " + file.getViewport().getStep());
+			out.println("Solver:     " + file.getSolver() + ", " 
+					+ file.getPrecision() + " (max. "
+					+ file.getMaxIterations() + " iterations, epsilon "
+					+ file.getEpsilon() + ")");
+			out.println("Coloring:   " + (file.isShading() ? "shaded" : "flat")
+					+ (file.getAntiAliasing() != null 
+							? ", anti-aliased " + file.getAntiAliasing() : ""));
+			if (result.getSamples() != null)
+				out.println("Samples:    " + result.getSamples().size() 
+						+ " pixels, " + result.getSamples().getPattern());
+			double[][] roots = result.getRegistry().toArray();
+			for (int i = 0; i < roots.length; i++)
+				out.println("Root " + (i+1) + ":     "
+						+ SimpleComplexMath.formatComplex(roots[i]));
+			return 0;
+		}
+
+		if ("verify".equals(cmd) && args.size() == 2) {
+			RegressionSuite suite = new RegressionSuite(path(args.get(1)));
+			if (options.containsKey("update")) {
+				suite.update(out);
+				return 0;
+			}
+			if (options.containsKey("threshold"))
+				suite.setThreshold(Double.parseDouble(options.get("threshold")) / 100);
+			return suite.verify(out) ? 0 : 3;
+		}
+
+		if ("serve".equals(cmd) && args.size() == 1) {
+			RenderDaemon daemon = new RenderDaemon();
+			if (options.containsKey("port"))
+				daemon.listen(Integer.parseInt(options.get("port")), 
+						options.containsKey("token") ? Paths.get(options.get("token"))
+								: RenderDaemon.TOKEN,
+						Paths.get(options.containsKey("dir") ? options.get("dir") : ""));
+			else
+				daemon.serve(System.in, out);
+			return 0;
+		}
+
+		if ("bench".equals(cmd) && args.size() == 3) {
+			Viewport viewport = center(new Viewport(0, 0, 
+					Double.parseDouble(args.get(2)), BENCH_SIZE, BENCH_SIZE));
+			Formula f = Formula.compile(args.get(1));
+			PrecisionBenchmark.run(f, viewport, out);
+			out.println();
+			PrecisionBenchmark.runSolvers(f, viewport, out);
+			return 0;
+		}
+
+		err.print(USAGE);
+		return 1;
+	}
+
+	/**
+	 * Runs a render in the current thread and saves a checkpoint
+	 * periodically; the checkpoint is deleted when the render is
+	 * saved or cancelled
+	 *
+	 * @param task The render
+	 * @param file The checkpoint file or <code>null</code>
+	 */
+	private void run(NewtonFractalCalculator task, String file) throws Exception {
+		if (file == null) {
+			run(task);
+			return;
+		}
+
+		long interval = CHECKPOINT_INTERVAL;
+		if (options.containsKey("checkpoint-interval"))
+			interval = Long.parseLong(options.get("checkpoint-interval"));
+		checkpoint = new Checkpoint(task, path(file), 1000 * interval);
+		try {
+			run(task);
+		} catch (CancellationException e) {
+			checkpoint.delete();
+			throw e;
+		} finally {
+			checkpoint.stop();
+			if (checkpoint.getError() != null)
+				err.println("Checkpoint failed: " + checkpoint.getError());
+		}
+	}
+
+	/**
+	 * Runs a render in the current thread and prints the metrics
+	 * periodically if requested by <code>--metrics ms</code>
+	 */
+	private void run(NewtonFractalCalculator task) throws Exception {
+		Thread poller = null;
+		if (options.containsKey("metrics")) {
+			final long interval = Long.parseLong(options.get("metrics"));
+			poller = new Thread("metrics") {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							Thread.sleep(interval);
+							err.println(RenderMetrics.getInstance());
+						}
+					} catch (InterruptedException e) {
+						// Render finished
+					}
+				}
+			};
+			poller.setDaemon(true);
+			poller.start();
+		}
+
+		try {
+			task.setPool(pool);
+			task.run();
+			task.get();
+		} finally {
+			if (poller != null) {
+				poller.interrupt();
+				err.println(RenderMetrics.getInstance());
+			}
+		}
+	}
+
+	/**
+	 * Moves a viewport to the center given by the option
+	 * <code>--center re,im</code>
+	 */
+	private Viewport center(Viewport viewport) {
+		String center = options.get("center");
+		if (center == null)
+			return viewport;
+
+		int p = center.indexOf(',');
+		if (p < 0)
+			throw new IllegalArgumentException("Bad center: " + center);
+		return viewport.withCenter(new BigDecimal(center.substring(0, p).trim()),
+				new BigDecimal(center.substring(p + 1).trim()));
+	}
+
+	/**
+	 * Sets the sample pattern given by the option
+	 * <code>--aa pattern</code> and the shading given by
+	 * <code>--shade</code>; before the render starts, so they are
+	 * saved in its checkpoints
+	 */
+	private void settings(NewtonFractalCalculator task) {
+		if (options.containsKey("aa"))
+			task.setAntiAliasing(SamplePattern.byName(options.get("aa")));
+		if (options.containsKey("shade"))
+			task.recolor(task.getColorizer().withShading(true));
+	}
+
+	/**
+	 * Creates the exporter which writes a Deep Zoom image while the
+	 * render is computed if the file ends with <code>.dzi</code>
+	 *
+	 * @return The exporter or <code>null</code>
+	 */
+	private PyramidExporter pyramid(NewtonFractalCalculator task, Path path)
+			throws IOException {
+		if (!path.toString().endsWith(PyramidExporter.EXTENSION))
+			return null;
+		if (task.getAntiAliasing() != null)
+			throw new IllegalArgumentException("Anti-aliasing isn't supported "
+					+ "for Deep Zoom images");
+
+		PyramidExporter pyramid = new PyramidExporter(path.toFile(), task.getResult(),
+				task.getColorizer());
+		task.addTileListener(pyramid);
+		task.setCreateImage(false);
+		return pyramid;
+	}
+
+	/**
+	 * Saves a finished render and deletes its checkpoint
+	 */
+	private void save(NewtonFractalCalculator task, PyramidExporter pyramid, Path path)
+			throws IOException {
+		export(task, pyramid, path);
+		if (checkpoint != null)
+			checkpoint.delete();
+	}
+
+	/**
+	 * Saves a finished render as render file or PNG image or finishes
+	 * the Deep Zoom image written while computing
+	 */
+	private void export(NewtonFractalCalculator task, PyramidExporter pyramid, Path path)
+			throws IOException {
+		if (pyramid != null) {
+			out.println(pyramid.finish() + " tiles written");
+			return;
+		}
+
+		if (path.toString().endsWith(RenderFile.EXTENSION)) {
+			task.toRenderFile().write(path);
+			return;
+		}
+
+		task.exportImage(path.toFile());
+	}
+
+	public static void main(String[] argv) {
+		try {
+			System.exit(new NewtonFractalCli(argv).run());
+		} catch (Exception e) {
+			System.err.println("Error: " + e);
+			System.exit(2);
+		}
+	}
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import helpers.DoubleDouble;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Newton method by perturbation for very deep zooms: the
+ * orbit of one reference point is computed once with double-double
+ * precision and every pixel only iterates its (tiny) difference to
+ * this orbit with double precision. Once the difference becomes big
+ * enough the pixel continues with the normal {@link FormulaNewton}.
+ * 
+ * @author maxstrauch
+ */
+public class PerturbationNewton implements PixelSolver {
+
+	/**
+	 * A pixel continues with double precision if its distance
+	 * to the reference orbit is bigger than this (relative to the
+	 * magnitude of the orbit)
+	 */
+	private static final double REBASE = 1e-5;
+	
+	/**
+	 * The reference orbit ends when its steps are smaller than this
+	 * (relative to the magnitude of the orbit)
+	 */
+	private static final double ORBIT_EPSILON = 1e-30;
+	
+	/**
+	 * The function
+	 */
+	private final Formula f;
+	
+	/**
+	 * The pixel of the reference point
+	 */
+	private final int refX, refY;
+	
+	/**
+	 * The size of one pixel
+	 */
+	private final double step;
+	
+	/**
+	 * The reference values of all slots of the formula for every
+	 * point of the orbit
+	 */
+	private final double[][] refs;
+	
+	/**
+	 * The points of the orbit (re hi, re lo, im hi, im lo)
+	 */
+	private final double[][] orbit;
+	
+	/**
+	 * The steps between the points of the orbit; the entry of the
+	 * last point is its remaining Newton step
+	 */
+	private final double[][] steps;
+	
+	/**
+	 * Index of the last point of the orbit
+	 */
+	private final int last;
+	
+	/**
+	 * Continues pixels which left the orbit
+	 */
+	private final FormulaNewton fallback;
+	
+	/**
+	 * Working memory
+	 */
+	private final double[] slots, delta = new double[4];
+	
+	/**
+	 * Creates a new solver with a computed reference orbit
+	 */
+	private PerturbationNewton(Formula f, Viewport viewport, int refX, int refY,
+			List<double[]> refs, List<double[]> orbit, List<double[]> steps) {
+		this.f = f;
+		this.refX = refX;
+		this.refY = refY;
+		this.step = viewport.getStep();
+		this.refs = refs.toArray(new double[refs.size()][]);
+		this.orbit = orbit.toArray(new double[orbit.size()][]);
+		this.steps = steps.toArray(new double[steps.size()][]);
+		this.last = this.refs.length - 1;
+		fallback = new FormulaNewton(f, viewport);
+		slots = new double[f.getSlotSize()];
+	}
+	
+	/**
+	 * Creates a solver for a viewport. The reference point is the
+	 * center or, if its orbit doesn't converge, one of some other
+	 * pixels. If no reference orbit converges all pixels are computed
+	 * by {@link DoubleDoubleNewton}
+	 * 
+	 * @param f The function
+	 * @param viewport The viewport
+	 * @return The solver
+	 */
+	public static PixelSolver create(Formula f, Viewport viewport) {
+		int w = viewport.getWidth(), h = viewport.getHeight();
+		int[][] candidates = {
+				{w/2, h/2}, {w/4, h/4}, {3*w/4, h/4}, {w/4, 3*h/4}, {3*w/4, 3*h/4}
+		};
+		
+		for (int[] c : candidates) {
+			PixelSolver solver = create(f, viewport, c[0], c[1]);
+			if (solver != null)
+				return solver;
+		}
+		
+		return new DoubleDoubleNewton(f, viewport);
+	}
+	
+	/**
+	 * Computes the reference orbit for one pixel
+	 * 
+	 * @return The solver or <code>null</code> if the orbit
+	 * doesn't converge
+	 */
+	private static PerturbationNewton create(Formula f, Viewport viewport, 
+			int refX, int refY) {
+		ReferenceOrbitEvent event = new ReferenceOrbitEvent();
+		event.begin();
+		PerturbationNewton solver = orbit(f, viewport, refX, refY);
+		if (event.shouldCommit()) {
+			event.x = refX;
+			event.y = refY;
+			event.converged = solver != null;
+			event.length = solver != null ? solver.orbit.length : 0;
+			event.commit();
+		}
+		return solver;
+	}
+	
+	/**
+	 * Iterates the reference orbit with double-double precision
+	 * 
+	 * @return The solver or <code>null</code> if the orbit
+	 * doesn't converge
+	 */
+	private static PerturbationNewton orbit(Formula f, Viewport viewport, 
+			int refX, int refY) {
+		double[] s = new double[f.getSlotSize()], t = new double[Formula.TEMP_SIZE],
+				z = new double[4], value = new double[8], q = new double[4];
+		List<double[]> refs = new ArrayList<double[]>(), orbit = new ArrayList<double[]>(),
+				steps = new ArrayList<double[]>();
+		
+		viewport.getPoint(refX, refY, z);
+		for (int i = 0; i < AutoDerivateNewton.MAX_ITERATIONS; i++) {
+			f.evalDD(z, s, t, value);
+			DoubleDouble.cdiv(value, 0, value, 4, q, 0, t);
+			if (Double.isNaN(q[0]) || Double.isNaN(q[2]) || 
+					Double.isInfinite(q[0]) || Double.isInfinite(q[2]))
+				return null;
+			
+			double[] ref = new double[f.getSlotSize() / 2];
+			f.storeReference(s, ref);
+			refs.add(ref);
+			orbit.add(z.clone());
+			steps.add(new double[] { -(q[0] + q[1]), -(q[2] + q[3]) });
+			
+			double scale = Math.max(1, Math.abs(z[0]) + Math.abs(z[2]));
+			if (Math.abs(q[0]) + Math.abs(q[2]) < ORBIT_EPSILON * scale)
+				return new PerturbationNewton(f, viewport, refX, refY, refs, 
+						orbit, steps);
+			
+			DoubleDouble.csub(z, 0, q, 0, z, 0);
+		}
+		
+		return null;
+	}
+	
+	@Override
+	public void solve(double x, double y, double[] out) {
+		double dr = (x - refX) * step, di = (y - refY) * step;
+		int r = f.getResultSlot() * 4;
+		
+		int i;
+		for (i = 0; i < AutoDerivateNewton.MAX_ITERATIONS; i++) {
+			int k = Math.min(i, last);
+			double[] ref = refs[k];
+			f.evalDelta(ref, dr, di, slots, delta);
+			
+			// The difference of the Newton steps of the pixel and the
+			// reference: (df F' - F df') / (F' (F' + df'))
+			double Fr = ref[r], Fi = ref[r+1], Fdr = ref[r+2], Fdi = ref[r+3];
+			double nr = delta[0] * Fdr - delta[1] * Fdi - (Fr * delta[2] - Fi * delta[3]);
+			double ni = delta[0] * Fdi + delta[1] * Fdr - (Fr * delta[3] + Fi * delta[2]);
+			double fnr = Fdr + delta[2], fni = Fdi + delta[3];
+			double mr = Fdr * fnr - Fdi * fni, mi = Fdr * fni + Fdi * fnr;
+			double base = mr * mr + mi * mi;
+			double qr = (mr * nr + mi * ni) / base, qi = (mr * ni - mi * nr) / base;
+			
+			// Behind the end of the orbit the reference stays on its
+			// last point, so its remaining step moves to the pixel
+			double ndr = dr - qr, ndi = di - qi, sr, si;
+			if (k < last) {
+				sr = steps[k][0] + (ndr - dr);
+				si = steps[k][1] + (ndi - di);
+			} else {
+				ndr += steps[k][0];
+				ndi += steps[k][1];
+				sr = ndr - dr;
+				si = ndi - di;
+			}
+			
+			// Check the result
+			if (Double.isNaN(ndr) || Double.isNaN(ndi) || 
+					Double.isInfinite(ndr) || Double.isInfinite(ndi))
+				break;
+			
+			dr = ndr;
+			di = ndi;
+			double[] z = orbit[Math.min(k + 1, last)];
+			
+			if (Math.abs(sr) + Math.abs(si) < AutoDerivateNewton.EPSILON) {
+				out[0] = z[0] + (z[1] + dr);
+				out[1] = z[2] + (z[3] + di);
+				out[2] = i + 1;
+				return;
+			}
+			
+			// Far away from the orbit double precision is enough
+			if (Math.abs(dr) + Math.abs(di) > 
+					REBASE * Math.max(1, Math.abs(z[0]) + Math.abs(z[2]))) {
+				fallback.solve(z[0] + (z[1] + dr), z[2] + (z[3] + di), i + 1, out);
+				return;
+			}
+		}
+		
+		out[0] = Double.NaN;
+		out[1] = Double.NaN;
+		out[2] = i;
+	}
+	
+}
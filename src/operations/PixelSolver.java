@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * Computes the root found by a root-finding method for one
+ * pixel of a {@link Viewport}. An instance keeps its own working
+ * memory and must only be used by one thread
+ *
+ * @author maxstrauch
+ */
+public interface PixelSolver {
+
+	/**
+	 * Computes the root for a pixel; the coordinates may have a
+	 * fraction to compute a sample within the pixel
+	 * 
+	 * @param x The column of the pixel
+	 * @param y The row of the pixel
+	 * @param out The result: the root (re, im; NaN if the method
+	 * doesn't converge) and the number of iterations
+	 */
+	void solve(double x, double y, double[] out);
+	
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * The precision tiers of the solver. The tier is selected by the
+ * size of a pixel relative to the magnitude of the numbers shown:
+ * double numbers are used as long as they can tell the pixels apart
+ * reliably, then double-double numbers and for the deepest zooms
+ * perturbation against a double-double reference orbit. Single
+ * precision (refined with double precision) is only used on request:
+ * the JIT compiler makes it barely faster than double precision, so
+ * re-solving the ambiguous pixels costs more than it saves
+ * 
+ * @author maxstrauch
+ */
+public enum Precision {
+	
+	FLOAT("float", 1e-5, false) {
+		@Override
+		public PixelSolver createSolver(Formula f, Viewport viewport, Solver solver) {
+			checkSolver(solver);
+			return new FloatNewton(f, viewport);
+		}
+	},
+	
+	DOUBLE("double", 1e-12, true) {
+		@Override
+		public PixelSolver createSolver(Formula f, Viewport viewport, Solver solver) {
+			if (solver.needsSecondDerivation())
+				return new FormulaNewton(f, viewport, solver);
+			return new BatchNewton(f, viewport, solver);
+		}
+	},
+	
+	DOUBLE_DOUBLE("double-double", 1e-18, true) {
+		@Override
+		public PixelSolver createSolver(Formula f, Viewport viewport, Solver solver) {
+			checkSolver(solver);
+			return new DoubleDoubleNewton(f, viewport);
+		}
+	},
+	
+	PERTURBATION("perturbation", Precision.MIN_RELATIVE_STEP, true) {
+		@Override
+		public PixelSolver createSolver(Formula f, Viewport viewport, Solver solver) {
+			checkSolver(solver);
+			return PerturbationNewton.create(f, viewport);
+		}
+	};
+	
+	/**
+	 * The smallest supported pixel size relative to the magnitude
+	 * of the numbers (limited by the precision of the center)
+	 */
+	public static final double MIN_RELATIVE_STEP = 1e-30;
+	
+	/**
+	 * The name of the tier
+	 */
+	private final String name;
+	
+	/**
+	 * The smallest relative pixel size for this tier
+	 */
+	private final double minRelativeStep;
+	
+	/**
+	 * Whether the tier is selected by {@link #forViewport(Viewport)}
+	 */
+	private final boolean automatic;
+	
+	private Precision(String name, double minRelativeStep, boolean automatic) {
+		this.name = name;
+		this.minRelativeStep = minRelativeStep;
+		this.automatic = automatic;
+	}
+	
+	/**
+	 * Creates a solver of this tier; every thread needs its own
+	 * 
+	 * @param f The function
+	 * @param viewport The viewport
+	 * @param solver The iteration scheme; the tiers other than
+	 * double precision only support the Newton method
+	 * @return A new solver
+	 */
+	public abstract PixelSolver createSolver(Formula f, Viewport viewport, Solver solver);
+	
+	/**
+	 * Creates a solver of this tier with the Newton method
+	 * 
+	 * @param f The function
+	 * @param viewport The viewport
+	 * @return A new solver
+	 */
+	public PixelSolver createSolver(Formula f, Viewport viewport) {
+		return createSolver(f, viewport, Solver.NEWTON);
+	}
+	
+	/**
+	 * Checks that the tier supports an iteration scheme: the tiers
+	 * other than double precision only support the Newton method
+	 * 
+	 * @param solver The iteration scheme
+	 * @throws IllegalArgumentException If the tier doesn't support it
+	 */
+	public void checkSolver(Solver solver) {
+		if (this != DOUBLE && solver != Solver.NEWTON)
+			throw new IllegalArgumentException("The solver " + solver 
+					+ " needs double precision, not " + this);
+	}
+	
+	/**
+	 * Selects the fastest tier which is precise enough for a viewport
+	 * 
+	 * @param viewport The viewport
+	 * @return The tier
+	 */
+	public static Precision forViewport(Viewport viewport) {
+		double relativeStep = viewport.getStep() / viewport.getScale();
+		for (Precision p : values())
+			if (p.automatic && relativeStep >= p.minRelativeStep)
+				return p;
+		throw new IllegalArgumentException("Zoom too deep");
+	}
+	
+	/**
+	 * Looks up a tier by its name
+	 * 
+	 * @param name The name, e.g. "double-double"
+	 * @return The tier
+	 */
+	public static Precision byName(String name) {
+		for (Precision p : values())
+			if (p.name.equals(name))
+				return p;
+		throw new IllegalArgumentException("Unknown precision: " + name);
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+	
+}
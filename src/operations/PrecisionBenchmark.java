@@ -0,0 +1,281 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * Measures the cost per pixel of every {@link Precision} tier and
+ * of a naive implementation with {@link BigDecimal} numbers of the
+ * same precision as double-double numbers, and the cost and
+ * iterations per pixel of every {@link Solver}
+ * 
+ * @author maxstrauch
+ */
+public class PrecisionBenchmark {
+
+	/**
+	 * Minimal time to measure one tier in ms
+	 */
+	private static final long MIN_TIME = 1000;
+	
+	/**
+	 * Number of pixels per row and column computed by the naive
+	 * implementation
+	 */
+	private static final int BIG_DECIMAL_GRID = 4;
+	
+	/**
+	 * Runs the benchmark and prints a table with the results
+	 * 
+	 * @param f The function
+	 * @param viewport The pixels to compute
+	 * @param out The output
+	 */
+	public static void run(Formula f, Viewport viewport, PrintStream out) {
+		int w = viewport.getWidth(), h = viewport.getHeight();
+		double[] r = new double[3];
+		
+		// The naive implementation only computes a few pixels
+		BigDecimalNewton naive = new BigDecimalNewton(f, viewport);
+		long start = System.nanoTime();
+		int n = 0;
+		for (int j = 0; j < BIG_DECIMAL_GRID; j++)
+			for (int i = 0; i < BIG_DECIMAL_GRID; i++, n++)
+				naive.solve(i * w / BIG_DECIMAL_GRID, j * h / BIG_DECIMAL_GRID, r);
+		double naiveTime = (System.nanoTime() - start) / 1000.0 / n;
+		
+		out.println(String.format("%-16s %12s %14s %10s", "Precision", 
+				"us/pixel", "pixels/s", "speedup"));
+		for (Precision p : Precision.values()) {
+			double time = measure(p.createSolver(f, viewport), w, h, r);
+			out.println(String.format("%-16s %12.3f %14.0f %9.0fx", p, time, 
+					1e6 / time, naiveTime / time));
+		}
+		out.println(String.format("%-16s %12.3f %14.0f %9.0fx", "BigDecimal", 
+				naiveTime, 1e6 / naiveTime, 1.0));
+	}
+	
+	/**
+	 * Runs the benchmark of the solvers with double precision and
+	 * prints a table with the results
+	 * 
+	 * @param f The function
+	 * @param viewport The pixels to compute
+	 * @param out The output
+	 */
+	public static void runSolvers(Formula f, Viewport viewport, PrintStream out) {
+		int w = viewport.getWidth(), h = viewport.getHeight();
+		double[] r = new double[3];
+		
+		out.println(String.format("%-16s %12s %14s %12s %14s", "Solver", 
+				"us/pixel", "pixels/s", "it/pixel", "not converged"));
+		for (Solver s : Solver.values()) {
+			PixelSolver solver = Precision.DOUBLE.createSolver(f, viewport, s);
+			double time = measure(solver, w, h, r);
+			
+			// The iterations and roots of one pass
+			long iterations = 0, failed = 0;
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
+					solver.solve(x, y, r);
+					iterations += (long) r[2];
+					if (Double.isNaN(r[0]))
+						failed++;
+				}
+			}
+			
+			out.println(String.format("%-16s %12.3f %14.0f %12.1f %13.1f%%", s, time, 
+					1e6 / time, (double) iterations / (w * h), 100.0 * failed / (w * h)));
+		}
+	}
+	
+	/**
+	 * Computes all pixels repeatedly for at least {@link #MIN_TIME}
+	 * ms after a warm up
+	 * 
+	 * @return The time per pixel in us
+	 */
+	private static double measure(PixelSolver solver, int w, int h, double[] r) {
+		solve(solver, w, h, r);
+		long pixels = 0, start = System.nanoTime();
+		do {
+			solve(solver, w, h, r);
+			pixels += (long) w * h;
+		} while (System.nanoTime() - start < MIN_TIME * 1000000L);
+		return (System.nanoTime() - start) / 1000.0 / pixels;
+	}
+	
+	/**
+	 * Computes all pixels; row by row if the solver supports batches
+	 */
+	private static void solve(PixelSolver solver, int w, int h, double[] r) {
+		if (solver instanceof BatchPixelSolver) {
+			double[] xs = new double[w], ys = new double[w], out = new double[3 * w];
+			for (int x = 0; x < w; x++)
+				xs[x] = x;
+			for (int y = 0; y < h; y++) {
+				Arrays.fill(ys, y);
+				((BatchPixelSolver) solver).solve(xs, ys, w, out);
+			}
+			return;
+		}
+		
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++)
+				solver.solve(x, y, r);
+	}
+	
+	/**
+	 * The Newton method with {@link BigDecimal} numbers
+	 */
+	private static class BigDecimalNewton implements PixelSolver {
+		
+		/**
+		 * Same precision as double-double numbers
+		 */
+		private static final MathContext MC = MathContext.DECIMAL128;
+		
+		private static final BigDecimal EPSILON = 
+				new BigDecimal(AutoDerivateNewton.EPSILON);
+		
+		private final Formula f;
+		private final Viewport viewport;
+		
+		/**
+		 * Slots: value (re, im) and derivation (re, im)
+		 */
+		private final BigDecimal[][] s;
+		
+		BigDecimalNewton(Formula f, Viewport viewport) {
+			this.f = f;
+			this.viewport = viewport;
+			s = new BigDecimal[f.count][];
+		}
+		
+		@Override
+		public void solve(double x, double y, double[] out) {
+			BigDecimal re = viewport.getCenterRe().add(
+					new BigDecimal(viewport.getOffsetRe(x)), MC);
+			BigDecimal im = viewport.getCenterIm().add(
+					new BigDecimal(viewport.getOffsetIm(y)), MC);
+			
+			int i;
+			for (i = 0; i < AutoDerivateNewton.MAX_ITERATIONS; i++) {
+				BigDecimal[] v = eval(re, im);
+				if (v[2].signum() == 0 && v[3].signum() == 0)
+					break;
+				BigDecimal[] q = div(v[0], v[1], v[2], v[3]);
+				re = re.subtract(q[0], MC);
+				im = im.subtract(q[1], MC);
+				if (q[0].abs().add(q[1].abs()).compareTo(EPSILON) < 0) {
+					out[0] = re.doubleValue();
+					out[1] = im.doubleValue();
+					out[2] = i + 1;
+					return;
+				}
+			}
+			
+			out[0] = Double.NaN;
+			out[1] = Double.NaN;
+			out[2] = i;
+		}
+		
+		/**
+		 * Evaluates f and f'
+		 */
+		private BigDecimal[] eval(BigDecimal re, BigDecimal im) {
+			for (int i = 0; i < f.count; i++) {
+				BigDecimal[] a = f.a[i] < 0 ? null : s[f.a[i]];
+				BigDecimal[] b = f.b[i] < 0 ? null : s[f.b[i]];
+				switch (f.ops[i]) {
+				case Formula.CONST:
+					s[i] = new BigDecimal[] { new BigDecimal(f.cRe[i]), 
+							new BigDecimal(f.cIm[i]), BigDecimal.ZERO, BigDecimal.ZERO };
+					break;
+				case Formula.VAR:
+					s[i] = new BigDecimal[] { re, im, BigDecimal.ONE, BigDecimal.ZERO };
+					break;
+				case Formula.ADD:
+					s[i] = new BigDecimal[4];
+					for (int k = 0; k < 4; k++)
+						s[i][k] = a[k].add(b[k], MC);
+					break;
+				case Formula.SUB:
+					s[i] = new BigDecimal[4];
+					for (int k = 0; k < 4; k++)
+						s[i][k] = a[k].subtract(b[k], MC);
+					break;
+				case Formula.MUL: {
+					BigDecimal[] v = mul(a[0], a[1], b[0], b[1]);
+					BigDecimal[] d1 = mul(a[2], a[3], b[0], b[1]);
+					BigDecimal[] d2 = mul(a[0], a[1], b[2], b[3]);
+					s[i] = new BigDecimal[] { v[0], v[1], 
+							d1[0].add(d2[0], MC), d1[1].add(d2[1], MC) };
+					break;
+				}
+				case Formula.DIV: {
+					BigDecimal[] v = div(a[0], a[1], b[0], b[1]);
+					BigDecimal[] t = mul(v[0], v[1], b[2], b[3]);
+					BigDecimal[] d = div(a[2].subtract(t[0], MC), 
+							a[3].subtract(t[1], MC), b[0], b[1]);
+					s[i] = new BigDecimal[] { v[0], v[1], d[0], d[1] };
+					break;
+				}
+				case Formula.POW: {
+					long n = Math.round(b[0].doubleValue());
+					if (n <= 1) {
+						s[i] = a.clone();
+						break;
+					}
+					BigDecimal[] p = { a[0], a[1] };
+					for (long k = 2; k < n; k++)
+						p = mul(p[0], p[1], a[0], a[1]);
+					BigDecimal[] v = mul(p[0], p[1], a[0], a[1]);
+					BigDecimal[] d = mul(p[0], p[1], a[2], a[3]);
+					BigDecimal bn = BigDecimal.valueOf(n);
+					s[i] = new BigDecimal[] { v[0], v[1], 
+							d[0].multiply(bn, MC), d[1].multiply(bn, MC) };
+					break;
+				}
+				}
+			}
+			return s[f.count - 1];
+		}
+		
+		private static BigDecimal[] mul(BigDecimal ar, BigDecimal ai, 
+				BigDecimal br, BigDecimal bi) {
+			return new BigDecimal[] {
+					ar.multiply(br, MC).subtract(ai.multiply(bi, MC), MC),
+					ar.multiply(bi, MC).add(ai.multiply(br, MC), MC)
+			};
+		}
+		
+		private static BigDecimal[] div(BigDecimal ar, BigDecimal ai, 
+				BigDecimal br, BigDecimal bi) {
+			BigDecimal base = br.multiply(br, MC).add(bi.multiply(bi, MC), MC);
+			return new BigDecimal[] {
+					br.multiply(ar, MC).add(bi.multiply(ai, MC), MC).divide(base, MC),
+					br.multiply(ai, MC).subtract(bi.multiply(ar, MC), MC).divide(base, MC)
+			};
+		}
+		
+	}
+	
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writes a render as Deep Zoom image (a pyramid of PNG tiles as
+ * used by web viewers) while it is computed. The exporter is added
+ * as {@link TileListener} before the computation starts: as soon as
+ * all pixels of a tile of the pyramid are computed it is colorized
+ * and written, and then scaled down into its parent tile of the next
+ * lower level. A parent tile is written when all of its children are
+ * scaled down, so the whole pyramid is written by the worker threads
+ * without a full image and without reading any tile again.
+ * <p>
+ * For <code>name.dzi</code> the tiles of level <code>l</code> are
+ * written to <code>name_files/l/column_row.png</code>; the highest
+ * level has the size of the render and every level below has half
+ * the size of the one above down to one pixel. Anti-aliasing samples
+ * computed after the tiles are not included
+ *
+ * @author maxstrauch
+ */
+public class PyramidExporter implements TileListener {
+
+	/**
+	 * Width and height of the tiles
+	 */
+	public static final int TILE_SIZE = 256;
+
+	/**
+	 * The extension of the descriptor file
+	 */
+	public static final String EXTENSION = ".dzi";
+
+	/**
+	 * The directory of the tiles
+	 */
+	private final File dir;
+
+	/**
+	 * Colorizes the tiles of the highest level
+	 */
+	private final Colorizer colorizer;
+
+	/**
+	 * Size of the render and number of the highest level
+	 */
+	private final int width, height, maxLevel;
+
+	/**
+	 * Number of tile columns of the highest level
+	 */
+	private final int columns;
+
+	/**
+	 * Number of pixels still missing per tile of the highest level
+	 */
+	private final AtomicIntegerArray missing;
+
+	/**
+	 * The parent tiles which are waiting for children by level,
+	 * column and row
+	 */
+	private final Map<Long, Parent> parents = new HashMap<Long, Parent>();
+
+	/**
+	 * Number of tiles and bytes written
+	 */
+	private final AtomicLong written = new AtomicLong(), bytes = new AtomicLong();
+
+	/**
+	 * The first error while writing
+	 */
+	private volatile IOException error;
+
+	private final ExportEvent event = new ExportEvent();
+
+	/**
+	 * Creates the exporter and writes the descriptor
+	 *
+	 * @param file The descriptor file (<code>name.dzi</code>)
+	 * @param result The result of the render
+	 * @param colorizer Colorizes the tiles
+	 * @throws IOException If the descriptor can't be written
+	 */
+	public PyramidExporter(File file, RenderResult result, Colorizer colorizer)
+			throws IOException {
+		event.begin();
+		String name = file.getName();
+		if (name.endsWith(EXTENSION))
+			name = name.substring(0, name.length() - EXTENSION.length());
+		this.dir = new File(file.getAbsoluteFile().getParentFile(), name + "_files");
+		this.colorizer = colorizer;
+		this.width = result.getWidth();
+		this.height = result.getHeight();
+
+		int level = 0;
+		while ((1L << level) < Math.max(width, height))
+			level++;
+		maxLevel = level;
+
+		columns = tiles(width);
+		missing = new AtomicIntegerArray(columns * tiles(height));
+		for (int r = 0; r < tiles(height); r++)
+			for (int c = 0; c < columns; c++)
+				missing.set(r * columns + c, extent(c, width) * extent(r, height));
+
+		for (int l = 0; l <= maxLevel; l++) {
+			File levelDir = new File(dir, Integer.toString(l));
+			if (!levelDir.isDirectory() && !levelDir.mkdirs())
+				throw new IOException("Can't create " + levelDir);
+		}
+
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		try {
+			out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			out.println("<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" "
+					+ "TileSize=\"" + TILE_SIZE + "\" Overlap=\"0\" Format=\"png\">");
+			out.println("  <Size Width=\"" + width + "\" Height=\"" + height + "\"/>");
+			out.println("</Image>");
+		} finally {
+			out.close();
+		}
+
+	}
+
+	/**
+	 * Returns the number of tiles for a size
+	 */
+	private static int tiles(int size) {
+		return (size + TILE_SIZE - 1) / TILE_SIZE;
+	}
+
+	/**
+	 * Returns the size of a tile within a level of the given size
+	 */
+	private static int extent(int tile, int size) {
+		return Math.min(TILE_SIZE, size - tile * TILE_SIZE);
+	}
+
+	@Override
+	public void tileFinished(RenderResult result, Tile tile) {
+		int c0 = tile.getX() / TILE_SIZE, c1 = (tile.getX() + tile.getWidth() - 1) / TILE_SIZE;
+		int r0 = tile.getY() / TILE_SIZE, r1 = (tile.getY() + tile.getHeight() - 1) / TILE_SIZE;
+		for (int r = r0; r <= r1; r++) {
+			for (int c = c0; c <= c1; c++) {
+				// The part of the finished tile within this tile
+				int w = Math.min(tile.getX() + tile.getWidth(), (c + 1) * TILE_SIZE)
+						- Math.max(tile.getX(), c * TILE_SIZE);
+				int h = Math.min(tile.getY() + tile.getHeight(), (r + 1) * TILE_SIZE)
+						- Math.max(tile.getY(), r * TILE_SIZE);
+				if (missing.addAndGet(r * columns + c, -w * h) == 0)
+					finished(maxLevel, c, r, colorizer.colorizeArea(result, 
+							c * TILE_SIZE, r * TILE_SIZE, extent(c, width), extent(r, height)));
+			}
+		}
+	}
+
+	/**
+	 * Writes a finished tile and scales it down into its parent
+	 */
+	private void finished(int level, int column, int row, BufferedImage image) {
+		write(level, column, row, image);
+		if (level == 0)
+			return;
+
+		long key = key(level - 1, column / 2, row / 2);
+		BufferedImage done = parent(key, level - 1, column / 2, row / 2)
+				.add(image, column % 2, row % 2);
+		if (done != null) {
+			// All children are there, so nobody asks for it again
+			synchronized (parents) {
+				parents.remove(key);
+			}
+			finished(level - 1, column / 2, row / 2, done);
+		}
+	}
+
+	/**
+	 * Returns the key of a tile in the map of parents
+	 */
+	private static long key(int level, int column, int row) {
+		return ((long) level << 48) | ((long) column << 24) | row;
+	}
+
+	/**
+	 * Returns the parent tile waiting for its children; it is
+	 * created by the first child
+	 */
+	private Parent parent(long key, int level, int column, int row) {
+		synchronized (parents) {
+			Parent parent = parents.get(key);
+			if (parent == null) {
+				// The size of the level and the number of children
+				int shift = maxLevel - level;
+				int w = (int) ((width + (1L << shift) - 1) >> shift);
+				int h = (int) ((height + (1L << shift) - 1) >> shift);
+				int childWidth = (int) ((width + (1L << (shift - 1)) - 1) >> (shift - 1));
+				int childHeight = (int) ((height + (1L << (shift - 1)) - 1) >> (shift - 1));
+				int children = Math.min(2, tiles(childWidth) - 2 * column)
+						* Math.min(2, tiles(childHeight) - 2 * row);
+				parent = new Parent(extent(column, w), extent(row, h), children);
+				parents.put(key, parent);
+			}
+			return parent;
+		}
+	}
+
+	/**
+	 * Writes a tile; errors are kept for {@link #finish()}
+	 */
+	private void write(int level, int column, int row, BufferedImage image) {
+		File file = new File(dir, level + File.separator + column + "_" + row + ".png");
+		try {
+			ImageIO.write(image, "png", file);
+			written.incrementAndGet();
+			bytes.addAndGet(file.length());
+		} catch (IOException e) {
+			error = e;
+		}
+	}
+
+	/**
+	 * Checks that the pyramid is complete; has to be called after the
+	 * computation
+	 *
+	 * @return The number of tiles written
+	 * @throws IOException If a tile couldn't be written or the
+	 * computation was not finished
+	 */
+	public long finish() throws IOException {
+		if (error != null)
+			throw error;
+		for (int i = 0; i < missing.length(); i++)
+			if (missing.get(i) != 0)
+				throw new IOException("The render is not complete");
+
+		if (event.shouldCommit()) {
+			event.file = dir.toString();
+			event.format = "dzi";
+			event.size = bytes.get();
+			event.commit();
+		}
+		return written.get();
+	}
+
+	/**
+	 * A tile which is built from the scaled down images of its
+	 * (up to four) children
+	 */
+	private static class Parent {
+
+		private final BufferedImage image;
+
+		/**
+		 * Number of children still missing; guarded by this
+		 */
+		private int missing;
+
+		Parent(int width, int height, int children) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			missing = children;
+		}
+
+		/**
+		 * Scales a child down by two into its quarter of the tile
+		 *
+		 * @return The image if all children are there
+		 */
+		BufferedImage add(BufferedImage child, int column, int row) {
+			int w = (child.getWidth() + 1) / 2, h = (child.getHeight() + 1) / 2;
+			int[] src = child.getRGB(0, 0, child.getWidth(), child.getHeight(), 
+					null, 0, child.getWidth());
+			int[] dst = new int[w * h];
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
+					// The average of up to 2 x 2 pixels
+					int r = 0, g = 0, b = 0, n = 0;
+					for (int j = 2 * y; j < Math.min(2 * y + 2, child.getHeight()); j++) {
+						for (int i = 2 * x; i < Math.min(2 * x + 2, child.getWidth()); i++) {
+							int color = src[j * child.getWidth() + i];
+							r += (color >> 16) & 0xFF;
+							g += (color >> 8) & 0xFF;
+							b += color & 0xFF;
+							n++;
+						}
+					}
+					dst[y * w + x] = ((r + n/2) / n << 16) | ((g + n/2) / n << 8) | (b + n/2) / n;
+				}
+			}
+
+			synchronized (this) {
+				image.setRGB(column * TILE_SIZE / 2, row * TILE_SIZE / 2, w, h, dst, 0, w);
+				return --missing == 0 ? image : null;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * End-to-end regression test of the renderer: renders a corpus of
+ * formulas and viewports, compares the roots of every pixel with
+ * stored golden renders and the speed with committed budgets.
+ * <p>
+ * The corpus is a text file with one case per line (<code>#</code>
+ * starts a comment):
+ * <pre>
+ * name formula range step [center=re,im] [solver=name] [precision=name]
+ *     [golden=name] [budget=pixels/s]
+ * </pre>
+ * The golden render of a case is stored next to it as
+ * <code>name.nfr</code>; <code>golden</code> compares a case with the
+ * golden render of another case instead (e.g. a faster precision
+ * with the same viewport in double precision). Pixels on the border
+ * between two roots in the golden render may differ (their root
+ * depends on the last bits of the numbers), all others have to
+ * converge to the same root.
+ * <p>
+ * The speed of a case is the best of at least {@link #RUNS} renders
+ * measured for at least {@link #MIN_TIME} ns after {@link #WARMUP}
+ * renders which aren't measured (to let the JIT compiler finish).
+ * Since the speed still depends on the machine and its load, slow
+ * cases are only reported unless a threshold is set: then a case
+ * also fails if it is slower than its budget by more than the
+ * threshold
+ *
+ * @author maxstrauch
+ */
+public class RegressionSuite {
+
+	/**
+	 * Number of renders of every case which aren't measured
+	 */
+	private static final int WARMUP = 2;
+
+	/**
+	 * Minimum number of measured renders of every case
+	 */
+	private static final int RUNS = 3;
+
+	/**
+	 * Minimum time of the measured renders of every case (ns)
+	 */
+	private static final long MIN_TIME = 1000000000L;
+
+	/**
+	 * The corpus file
+	 */
+	private final Path file;
+
+	/**
+	 * The lines of the corpus file
+	 */
+	private final List<String> lines;
+
+	/**
+	 * The share the renders may be slower than the budgets or NaN if
+	 * the speed is only reported
+	 */
+	private double threshold = Double.NaN;
+
+	/**
+	 * Loads a corpus
+	 *
+	 * @param file The corpus file
+	 * @throws IOException If the file can't be read
+	 */
+	public RegressionSuite(Path file) throws IOException {
+		this.file = file;
+		this.lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Lets cases fail which are slower than their budgets by more
+	 * than a share
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Renders all cases and compares them with their golden renders
+	 * and budgets
+	 *
+	 * @param out Receives a table with the results
+	 * @return <code>true</code> if all cases passed (pixels and, if a
+	 * threshold is set, speed)
+	 * @throws Exception If a case can't be rendered or a golden
+	 * render is missing
+	 */
+	public boolean verify(PrintStream out) throws Exception {
+		out.println(String.format("%-16s %10s %10s %12s %12s  %s", "Case", "pixels", 
+				"borders", "pixels/s", "budget", "result"));
+		boolean passed = true;
+		for (String line : lines) {
+			Case c = parse(line);
+			if (c == null)
+				continue;
+
+			RenderFile golden = RenderFile.read(golden(c));
+			NewtonFractalCalculator task = render(c);
+			int[] diff = compare(golden.getResult(), task.getResult());
+
+			String result = "ok";
+			double slower = c.budget > 0 ? 1 - c.speed / c.budget : 0;
+			if (diff[0] > 0)
+				result = "FAILED: " + diff[0] + " pixels converge to other roots";
+			else if (slower > threshold)
+				result = String.format("FAILED: %.0f%% slower", 100 * slower);
+			else if (slower > 0)
+				result = String.format("ok (%.0f%% slower)", 100 * slower);
+			passed &= result.startsWith("ok");
+
+			out.println(String.format("%-16s %10d %10d %12.0f %12d  %s", c.name,
+					task.getResult().getWidth() * task.getResult().getHeight(), diff[1],
+					c.speed, c.budget, result));
+		}
+		return passed;
+	}
+
+	/**
+	 * Renders all cases and stores them as golden renders; the
+	 * budgets in the corpus file are replaced by the measured speed
+	 *
+	 * @param out Receives the progress
+	 * @throws Exception If a case can't be rendered or the files
+	 * can't be written
+	 */
+	public void update(PrintStream out) throws Exception {
+		List<String> updated = new ArrayList<String>(lines.size());
+		for (String line : lines) {
+			Case c = parse(line);
+			if (c == null) {
+				updated.add(line);
+				continue;
+			}
+
+			NewtonFractalCalculator task = render(c);
+			long speed = Math.round(c.speed);
+			if (c.golden == null)
+				task.toRenderFile().write(golden(c));
+			out.println(String.format("%-16s %12d pixels/s", c.name, speed));
+
+			// Replace the budget
+			StringBuilder sb = new StringBuilder();
+			for (String token : line.trim().split("\\s+"))
+				if (!token.startsWith("budget="))
+					sb.append(token).append(' ');
+			updated.add(sb.append("budget=").append(speed).toString());
+		}
+		Files.write(file, updated, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the golden render of a case
+	 */
+	private Path golden(Case c) {
+		return file.resolveSibling((c.golden != null ? c.golden : c.name) 
+				+ RenderFile.EXTENSION);
+	}
+
+	/**
+	 * Renders a case {@link #WARMUP} times, then measures it at least
+	 * {@link #RUNS} times and for at least {@link #MIN_TIME} ns and
+	 * stores the best speed in the case
+	 *
+	 * @return The last render
+	 */
+	private static NewtonFractalCalculator render(Case c) throws Exception {
+		for (int i = 0; i < WARMUP; i++) {
+			NewtonFractalCalculator task = c.createTask();
+			task.run();
+			task.get();
+		}
+
+		NewtonFractalCalculator task = null;
+		long best = Long.MAX_VALUE, total = 0;
+		for (int i = 0; i < RUNS || total < MIN_TIME; i++) {
+			task = c.createTask();
+			long start = System.nanoTime();
+			task.run();
+			task.get();
+			long time = System.nanoTime() - start;
+			best = Math.min(best, time);
+			total += time;
+		}
+		RenderResult result = task.getResult();
+		c.speed = (double) result.getWidth() * result.getHeight() / best * 1e9;
+		return task;
+	}
+
+	/**
+	 * Compares the roots of two renders of the same viewport
+	 *
+	 * @param golden The golden render
+	 * @param result The new render
+	 * @return The number of pixels which converge to other roots
+	 * inside the basins and on the borders of the golden render
+	 */
+	static int[] compare(RenderResult golden, RenderResult result) {
+		int w = golden.getWidth(), h = golden.getHeight();
+		if (w != result.getWidth() || h != result.getHeight())
+			throw new IllegalArgumentException("Renders of different size");
+
+		int[] diff = new int[2];
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				if (sameRoot(golden, result, x, y))
+					continue;
+
+				int root = golden.getRoot(x, y);
+				boolean border = (x > 0 && golden.getRoot(x - 1, y) != root)
+						|| (x < w - 1 && golden.getRoot(x + 1, y) != root)
+						|| (y > 0 && golden.getRoot(x, y - 1) != root)
+						|| (y < h - 1 && golden.getRoot(x, y + 1) != root);
+				diff[border ? 1 : 0]++;
+			}
+		}
+		return diff;
+	}
+
+	/**
+	 * Checks if a pixel converges to the same root in both renders;
+	 * the ids of the roots may differ
+	 */
+	private static boolean sameRoot(RenderResult golden, RenderResult result, int x, int y) {
+		int a = golden.getRoot(x, y), b = result.getRoot(x, y);
+		if (a == RootRegistry.NONE || b == RootRegistry.NONE)
+			return a == b;
+
+		double[] p = golden.getRegistry().get(a), q = result.getRegistry().get(b);
+		return Math.hypot(p[0] - q[0], p[1] - q[1]) < RootRegistry.TOLERANCE;
+	}
+
+	/**
+	 * Parses a line of the corpus
+	 *
+	 * @return The case or <code>null</code> for empty lines and
+	 * comments
+	 */
+	private static Case parse(String line) {
+		int comment = line.indexOf('#');
+		if (comment >= 0)
+			line = line.substring(0, comment);
+		line = line.trim();
+		if (line.isEmpty())
+			return null;
+
+		String[] tokens = line.split("\\s+");
+		if (tokens.length < 4)
+			throw new IllegalArgumentException("Bad case: " + line);
+
+		Case c = new Case();
+		c.name = tokens[0];
+		if (!isName(c.name))
+			throw new IllegalArgumentException("Bad case name: " + c.name);
+		c.formula = tokens[1];
+		c.range = Double.parseDouble(tokens[2]);
+		c.step = Double.parseDouble(tokens[3]);
+		for (int i = 4; i < tokens.length; i++) {
+			String token = tokens[i];
+			int p = token.indexOf('=');
+			String key = p < 0 ? token : token.substring(0, p), value = token.substring(p + 1);
+			if ("center".equals(key) && value.indexOf(',') > 0) {
+				c.centerRe = new BigDecimal(value.substring(0, value.indexOf(',')));
+				c.centerIm = new BigDecimal(value.substring(value.indexOf(',') + 1));
+			} else if ("solver".equals(key)) {
+				c.solver = Solver.byName(value);
+			} else if ("precision".equals(key)) {
+				c.precision = Precision.byName(value);
+			} else if ("golden".equals(key) && isName(value)) {
+				c.golden = value;
+			} else if ("budget".equals(key)) {
+				c.budget = Long.parseLong(value);
+			} else {
+				throw new IllegalArgumentException("Bad case: " + line);
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Checks that a case name is a plain file name, so the golden
+	 * renders are next to the corpus
+	 */
+	private static boolean isName(String name) {
+		return name.matches("[A-Za-z0-9_.-]+") && !name.startsWith(".");
+	}
+
+	/**
+	 * A case of the corpus
+	 */
+	private static class Case {
+
+		String name, formula;
+		double range, step;
+		BigDecimal centerRe = BigDecimal.ZERO, centerIm = BigDecimal.ZERO;
+		Solver solver = Solver.NEWTON;
+
+		/**
+		 * The precision or <code>null</code> to select it by the
+		 * viewport
+		 */
+		Precision precision;
+
+		/**
+		 * The case whose golden render is used or <code>null</code>
+		 * for the own one
+		 */
+		String golden;
+
+		/**
+		 * The expected pixels per second; <code>0</code> if unknown
+		 */
+		long budget;
+
+		/**
+		 * The measured pixels per second
+		 */
+		double speed;
+
+		NewtonFractalCalculator createTask() {
+			NewtonFractalCalculator task = new NewtonFractalCalculator(formula,
+					Viewport.of(range, step).withCenter(centerRe, centerIm), null);
+			if (precision != null)
+				task.setPrecision(precision);
+			task.setSolver(solver);
+			return task;
+		}
+
+	}
+
+}
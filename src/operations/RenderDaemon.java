@@ -0,0 +1,283 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Long running process which executes the commands of
+ * {@link NewtonFractalCli}, so many small renders don't pay for
+ * starting the JVM, loading the classes and compiling the code
+ * again each time; compiled formulas are kept by
+ * {@link Formula#compile(String)} and all renders share one pool
+ * of threads.
+ * <p>
+ * Every line read is a command line (arguments with spaces in
+ * double or single quotes), e.g.
+ * <pre>
+ * render "x^3 - 1" 1.0 0.01 thumb.png --shade
+ * </pre>
+ * The output of the command is written back while it runs,
+ * followed by the line <code>done &lt;exit code&gt;</code>.
+ * <code>quit</code> or the end of the input closes the session.
+ * <p>
+ * Connections to {@link #listen(int, Path, Path)} are served in
+ * parallel. Since any process of the computer can connect, the first
+ * line of a connection has to be the token stored in a file which
+ * only the owner can read, and the commands of a connection may only
+ * read and write files in one directory
+ *
+ * @author maxstrauch
+ */
+public class RenderDaemon {
+
+	/**
+	 * Starts the line which ends the answer to a command
+	 */
+	public static final String DONE = "done";
+
+	/**
+	 * Ends a session
+	 */
+	private static final String QUIT = "quit";
+
+	/**
+	 * The default file of the token of the connections
+	 */
+	public static final Path TOKEN = Paths.get(System.getProperty("user.home"), 
+			".newtonfractal-token");
+
+	/**
+	 * Number of random bytes of a new token
+	 */
+	private static final int TOKEN_BYTES = 32;
+
+	/**
+	 * The threads shared by all renders
+	 */
+	private final ForkJoinPool pool = new ForkJoinPool(
+			Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Executes the commands read from a stream until it ends
+	 *
+	 * @param in The commands, one per line
+	 * @param out The stream for the answers
+	 * @throws IOException If the commands can't be read
+	 */
+	public void serve(InputStream in, PrintStream out) throws IOException {
+		serve(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), 
+				out, null);
+	}
+
+	/**
+	 * Executes the commands read until the input ends
+	 *
+	 * @param reader The commands, one per line
+	 * @param out The stream for the answers
+	 * @param dir The directory all files have to be in or
+	 * <code>null</code>
+	 * @throws IOException If the commands can't be read
+	 */
+	private void serve(BufferedReader reader, PrintStream out, Path dir) throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty())
+				continue;
+			if (QUIT.equals(line))
+				break;
+
+			out.println(DONE + " " + execute(line, out, dir));
+			out.flush();
+		}
+	}
+
+	/**
+	 * Accepts connections from this computer and serves each of them
+	 * in its own thread; never returns
+	 *
+	 * @param port The port to listen to
+	 * @param tokenFile The file with the token which has to be the
+	 * first line of every connection; created with a random token if
+	 * it doesn't exist
+	 * @param dir The directory of the files of the commands
+	 * @throws IOException If the port can't be opened or the token
+	 * can't be read
+	 */
+	public void listen(int port, Path tokenFile, Path dir) throws IOException {
+		final byte[] token = readToken(tokenFile).getBytes(StandardCharsets.UTF_8);
+		final Path root = dir.toRealPath();
+		ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		try {
+			while (true) {
+				final Socket socket = server.accept();
+				Thread connection = new Thread("connection " + socket.getPort()) {
+					@Override
+					public void run() {
+						try {
+							BufferedReader reader = new BufferedReader(new InputStreamReader(
+									socket.getInputStream(), StandardCharsets.UTF_8));
+							PrintStream out = new PrintStream(socket.getOutputStream(), 
+									true, "UTF-8");
+							String line = reader.readLine();
+							if (line == null || !MessageDigest.isEqual(token, 
+									line.trim().getBytes(StandardCharsets.UTF_8))) {
+								out.println("Error: Wrong token");
+								return;
+							}
+							serve(reader, out, root);
+						} catch (IOException e) {
+							// Connection lost
+						} finally {
+							try {
+								socket.close();
+							} catch (IOException e) {
+								// Already closed
+							}
+						}
+					}
+				};
+				connection.setDaemon(true);
+				connection.start();
+			}
+		} finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * Reads the token of the connections; a new file is created with
+	 * a random token
+	 *
+	 * @param file The file of the token
+	 * @return The token
+	 * @throws IOException If the file can't be read or written, is
+	 * readable by others than its owner or is empty
+	 */
+	static String readToken(Path file) throws IOException {
+		boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+		if (Files.notExists(file)) {
+			byte[] random = new byte[TOKEN_BYTES];
+			new SecureRandom().nextBytes(random);
+			StringBuilder token = new StringBuilder();
+			for (byte b : random)
+				token.append(String.format("%02x", b & 0xFF));
+
+			if (posix)
+				Files.createFile(file, PosixFilePermissions.asFileAttribute(
+						EnumSet.of(PosixFilePermission.OWNER_READ, 
+								PosixFilePermission.OWNER_WRITE)));
+			else
+				Files.createFile(file);
+			Files.write(file, token.toString().getBytes(StandardCharsets.UTF_8));
+		}
+
+		if (posix) {
+			Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+			permissions.removeAll(EnumSet.of(PosixFilePermission.OWNER_READ, 
+					PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE));
+			if (!permissions.isEmpty())
+				throw new IOException("The token file " + file 
+						+ " must only be accessible by its owner (chmod 600)");
+		}
+
+		String token = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+		if (token.isEmpty())
+			throw new IOException("The token file " + file + " is empty");
+		return token;
+	}
+
+	/**
+	 * Executes one command
+	 *
+	 * @param line The command line
+	 * @param out The stream for the output and the errors
+	 * @param dir The directory all files have to be in or
+	 * <code>null</code>
+	 * @return The exit code
+	 */
+	private int execute(String line, PrintStream out, Path dir) {
+		try {
+			String[] argv = split(line);
+			if (argv.length > 0 && "serve".equals(argv[0]))
+				throw new IllegalArgumentException("Already serving");
+			return new NewtonFractalCli(argv, out, out, pool, dir).run();
+		} catch (Exception e) {
+			out.println("Error: " + e);
+			return 2;
+		}
+	}
+
+	/**
+	 * Splits a command line into its arguments
+	 *
+	 * @param line The command line
+	 * @return The arguments without the quotes
+	 */
+	static String[] split(String line) {
+		List<String> args = new ArrayList<String>();
+		StringBuilder arg = null;
+		char quote = 0;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+				else
+					arg.append(c);
+			} else if (Character.isWhitespace(c)) {
+				if (arg != null)
+					args.add(arg.toString());
+				arg = null;
+			} else {
+				if (arg == null)
+					arg = new StringBuilder();
+				if (c == '"' || c == '\'')
+					quote = c;
+				else
+					arg.append(c);
+			}
+		}
+		if (quote != 0)
+			throw new IllegalArgumentException("Missing " + quote);
+		if (arg != null)
+			args.add(arg.toString());
+		return args.toArray(new String[args.size()]);
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a whole render, from the start of the
+ * computation until the result is finished or cancelled
+ *
+ * @author maxstrauch
+ */
+@Name("newtonfractal.Render")
+@Label("Render")
+@Category("Newton Fractal")
+@Description("Computation of a fractal image")
+class RenderEvent extends Event {
+
+	@Label("Formula")
+	String formula;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("Precision")
+	String precision;
+
+	@Label("Anti-Aliasing")
+	String antiAliasing;
+
+	@Label("Pixels")
+	@Description("Number of pixels and samples computed")
+	long pixels;
+
+	@Label("Cancelled")
+	boolean cancelled;
+
+}
@@ -0,0 +1,552 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import helpers.DoubleDouble;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary file format (*.nfr) for a computed fractal. In contrast
+ * to a PNG export it keeps the root ids, the iteration counts, the
+ * roots and all settings, so a render can be opened and recolored
+ * again without any computation.
+ * <p>
+ * The file starts with the magic <code>NFR1</code> followed by
+ * chunks; every chunk has a four letter type, the length of its
+ * payload and the payload:
+ * <ul>
+ * <li><code>META</code>: formula, viewport, solver, anti-aliasing and
+ * shading settings</li>
+ * <li><code>ROOT</code>: the roots in order of their ids</li>
+ * <li><code>DATA</code>: a deflate compressed band of rows</li>
+ * <li><code>SMPL</code>: the anti-aliasing samples (optional)</li>
+ * <li><code>END </code>: marks the end of the file</li>
+ * </ul>
+ * All numbers are stored in big endian byte order
+ *
+ * @author maxstrauch
+ */
+public class RenderFile {
+
+	/**
+	 * File extension of render files
+	 */
+	public static final String EXTENSION = ".nfr";
+
+	/**
+	 * Magic number at the beginning of every file
+	 */
+	private static final int MAGIC = 0x4E465231;
+
+	/**
+	 * The chunk types
+	 */
+	private static final int META = 0x4D455441, ROOT = 0x524F4F54,
+			DATA = 0x44415441, SMPL = 0x534D504C, END = 0x454E4420;
+
+	/**
+	 * Number of rows stored in one data chunk
+	 */
+	private static final int BAND_ROWS = 64;
+
+	/**
+	 * The function of the fractal
+	 */
+	private final String formula;
+
+	/**
+	 * The area of the complex pane
+	 */
+	private final Viewport viewport;
+
+	/**
+	 * The solver settings
+	 */
+	private final String solver;
+	private final Precision precision;
+	private final int maxIterations;
+	private final double epsilon;
+
+	/**
+	 * The coloring and anti-aliasing settings
+	 */
+	private final SamplePattern antiAliasing;
+	private final boolean shading;
+
+	/**
+	 * The raw result
+	 */
+	private final RenderResult result;
+
+	/**
+	 * Creates a new render file
+	 *
+	 * @param formula The function of the fractal
+	 * @param viewport The area of the complex pane
+	 * @param solver The name of the solver
+	 * @param precision The precision of the solver
+	 * @param maxIterations The maximal number of iterations
+	 * @param epsilon The step size to stop the iteration
+	 * @param antiAliasing The sample pattern or <code>null</code>
+	 * @param shading Whether the pixels are shaded by iteration count
+	 * @param result The raw result
+	 */
+	public RenderFile(String formula, Viewport viewport, String solver,
+			Precision precision, int maxIterations, double epsilon,
+			SamplePattern antiAliasing, boolean shading, RenderResult result) {
+		this.formula = formula;
+		this.viewport = viewport;
+		this.solver = solver;
+		this.precision = precision;
+		this.maxIterations = maxIterations;
+		this.epsilon = epsilon;
+		this.antiAliasing = antiAliasing;
+		this.shading = shading;
+		this.result = result;
+	}
+
+	/**
+	 * Writes the file; the data bands are compressed in parallel
+	 *
+	 * @param path The file to write
+	 * @throws IOException If writing fails
+	 */
+	public void write(Path path) throws IOException {
+		ExportEvent event = new ExportEvent();
+		event.begin();
+
+		// Compress all bands
+		int bands = (result.getHeight() + BAND_ROWS - 1) / BAND_ROWS;
+		List<Future<byte[]>> compressed = new ArrayList<Future<byte[]>>(bands);
+		ExecutorService pool = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors());
+		try {
+			for (int i = 0; i < bands; i++) {
+				final int y = i * BAND_ROWS;
+				compressed.add(pool.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws Exception {
+						return compressBand(y);
+					}
+				}));
+			}
+
+			try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer head = ByteBuffer.allocate(4);
+				head.putInt(MAGIC).flip();
+				writeFully(ch, head);
+				writeChunk(ch, META, metaPayload());
+				writeChunk(ch, ROOT, rootPayload());
+				for (Future<byte[]> band : compressed)
+					writeChunk(ch, DATA, get(band));
+				if (result.getSamples() != null)
+					writeChunk(ch, SMPL, samplePayload(result.getSamples()));
+				writeChunk(ch, END, new byte[0]);
+				event.size = ch.size();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		if (event.shouldCommit()) {
+			event.file = path.toString();
+			event.format = "nfr";
+			event.commit();
+		}
+	}
+
+	/**
+	 * Reads a file; the data bands are decompressed in parallel
+	 *
+	 * @param path The file to read
+	 * @return The render file
+	 * @throws IOException If reading fails or the file is corrupt
+	 */
+	public static RenderFile read(Path path) throws IOException {
+		ByteBuffer buf;
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (ch.size() > Integer.MAX_VALUE)
+				throw new IOException("File too big");
+			buf = ByteBuffer.allocate((int) ch.size());
+			while (buf.hasRemaining())
+				if (ch.read(buf) < 0)
+					throw new IOException("Unexpected end of file");
+			buf.flip();
+		}
+
+		if (buf.remaining() < 4 || buf.getInt() != MAGIC)
+			throw new IOException("Not a render file");
+
+		// Read the chunks
+		DataInputStream meta = null;
+		double[][] roots = null;
+		List<ByteBuffer> bands = new ArrayList<ByteBuffer>();
+		ByteBuffer samples = null;
+		int type;
+		do {
+			if (buf.remaining() < 8)
+				throw new IOException("Unexpected end of file");
+			type = buf.getInt();
+			int length = buf.getInt();
+			if (length < 0 || length > buf.remaining())
+				throw new IOException("Corrupt chunk");
+			ByteBuffer payload = buf.slice();
+			payload.limit(length);
+			buf.position(buf.position() + length);
+
+			if (type == META) {
+				meta = new DataInputStream(new ByteArrayInputStream(
+						payload.array(), payload.arrayOffset(), length));
+			} else if (type == ROOT) {
+				int count = length < 4 ? -1 : payload.getInt();
+				if (count < 0 || count > RootRegistry.MAX_ROOTS 
+						|| payload.remaining() < count * 16)
+					throw new IOException("Corrupt root chunk");
+				roots = new double[count][];
+				for (int i = 0; i < roots.length; i++)
+					roots[i] = new double[] { payload.getDouble(), payload.getDouble() };
+			} else if (type == DATA) {
+				bands.add(payload);
+			} else if (type == SMPL) {
+				samples = payload;
+			}
+			// Unknown chunks are skipped
+		} while (type != END);
+
+		if (meta == null || roots == null)
+			throw new IOException("Missing chunk");
+
+		String formula = meta.readUTF();
+		int width = meta.readInt(), height = meta.readInt();
+		if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE)
+			throw new IOException("Corrupt meta chunk");
+		double centerRe = meta.readDouble(), centerIm = meta.readDouble(),
+				stepSize = meta.readDouble();
+		String solver = meta.readUTF();
+		int maxIterations = meta.readInt();
+		double epsilon = meta.readDouble();
+
+		// The low parts of the center, the precision, the
+		// anti-aliasing and the shading are missing in older files
+		double centerReLo = 0, centerImLo = 0;
+		Precision precision = Precision.DOUBLE;
+		SamplePattern antiAliasing = null;
+		boolean shading = false;
+		try {
+			if (meta.available() > 0) {
+				centerReLo = meta.readDouble();
+				centerImLo = meta.readDouble();
+				precision = Precision.byName(meta.readUTF());
+			}
+			if (meta.available() > 0) {
+				String pattern = meta.readUTF();
+				antiAliasing = pattern.isEmpty() ? null : SamplePattern.byName(pattern);
+				shading = meta.readBoolean();
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt meta chunk", e);
+		}
+		Viewport viewport = new Viewport(
+				DoubleDouble.toBigDecimal(centerRe, centerReLo),
+				DoubleDouble.toBigDecimal(centerIm, centerImLo),
+				stepSize, width, height);
+
+		// Restore the result
+		RootRegistry registry = new RootRegistry();
+		for (double[] root : roots)
+			registry.register(root);
+		final RenderResult result = new RenderResult(width, height, registry);
+
+		ExecutorService pool = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors());
+		try {
+			List<Future<Void>> done = new ArrayList<Future<Void>>(bands.size());
+			for (final ByteBuffer band : bands) {
+				done.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						inflateBand(band, result);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : done)
+				get(f);
+		} finally {
+			pool.shutdownNow();
+		}
+
+		if (samples != null)
+			result.setSamples(readSamples(samples, width * height));
+
+		return new RenderFile(formula, viewport, solver, precision,
+				maxIterations, epsilon, antiAliasing, shading, result);
+	}
+
+	/**
+	 * Creates the payload of the META chunk
+	 */
+	private byte[] metaPayload() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bos);
+		double[] center = viewport.getCenter();
+		out.writeUTF(formula);
+		out.writeInt(result.getWidth());
+		out.writeInt(result.getHeight());
+		out.writeDouble(center[0]);
+		out.writeDouble(center[2]);
+		out.writeDouble(viewport.getStep());
+		out.writeUTF(solver);
+		out.writeInt(maxIterations);
+		out.writeDouble(epsilon);
+		out.writeDouble(center[1]);
+		out.writeDouble(center[3]);
+		out.writeUTF(precision.toString());
+		out.writeUTF(antiAliasing == null ? "" : antiAliasing.toString());
+		out.writeBoolean(shading);
+		out.flush();
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Creates the payload of the ROOT chunk
+	 */
+	private byte[] rootPayload() {
+		double[][] roots = result.getRegistry().toArray();
+		ByteBuffer buf = ByteBuffer.allocate(4 + roots.length * 16);
+		buf.putInt(roots.length);
+		for (double[] root : roots)
+			buf.putDouble(root[0]).putDouble(root[1]);
+		return buf.array();
+	}
+
+	/**
+	 * Creates the payload of the SMPL chunk: the name of the pattern,
+	 * the number of pixels, their indices, the root ids and the
+	 * iteration counts of the samples
+	 */
+	private static byte[] samplePayload(SampleSet samples) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bos);
+		out.writeUTF(samples.getPattern().toString());
+		out.writeInt(samples.size());
+		out.flush();
+
+		int n = samples.getRootData().length;
+		ByteBuffer buf = ByteBuffer.allocate(samples.size() * 4 + n * 3);
+		buf.asIntBuffer().put(samples.getPixelData());
+		buf.position(samples.size() * 4);
+		buf.put(samples.getRootData());
+		buf.asShortBuffer().put(samples.getIterationData());
+		bos.write(buf.array());
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Reads the SMPL chunk
+	 */
+	private static SampleSet readSamples(ByteBuffer buf, int pixels)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				buf.array(), buf.arrayOffset() + buf.position(), buf.remaining()));
+		SamplePattern pattern;
+		try {
+			pattern = SamplePattern.byName(in.readUTF());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt sample chunk", e);
+		}
+		int count = in.readInt();
+		if (count < 0 || count > pixels)
+			throw new IOException("Corrupt sample chunk");
+		int n = count * pattern.size();
+		if (in.available() != (long) count * 4 + (long) n * 3)
+			throw new IOException("Corrupt sample chunk");
+
+		ByteBuffer data = ByteBuffer.allocate(in.available());
+		in.readFully(data.array());
+		int[] indices = new int[count];
+		data.asIntBuffer().get(indices);
+		for (int i = 0; i < count; i++)
+			if (indices[i] < 0 || indices[i] >= pixels || 
+					(i > 0 && indices[i] <= indices[i-1]))
+				throw new IOException("Corrupt sample chunk");
+
+		SampleSet samples = new SampleSet(pattern, indices);
+		data.position(count * 4);
+		data.get(samples.getRootData());
+		data.asShortBuffer().get(samples.getIterationData());
+		return samples;
+	}
+
+	/**
+	 * Creates the payload of a DATA chunk: the first row, the number
+	 * of rows and the compressed root ids and iteration counts
+	 */
+	private byte[] compressBand(int y) {
+		int width = result.getWidth();
+		int rows = Math.min(BAND_ROWS, result.getHeight() - y);
+		int offset = y * width, n = rows * width;
+
+		ByteBuffer raw = ByteBuffer.allocate(n * 3);
+		raw.put(result.getRootData(), offset, n);
+		raw.asShortBuffer().put(result.getIterationData(), offset, n);
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(raw.array());
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(n);
+		byte[] tmp = new byte[64 * 1024];
+		while (!deflater.finished())
+			out.write(tmp, 0, deflater.deflate(tmp));
+		deflater.end();
+
+		byte[] data = out.toByteArray();
+		return ByteBuffer.allocate(8 + data.length).putInt(y).putInt(rows)
+				.put(data).array();
+	}
+
+	/**
+	 * Decompresses a DATA chunk into the result
+	 */
+	private static void inflateBand(ByteBuffer band, RenderResult result)
+			throws IOException {
+		if (band.remaining() < 8)
+			throw new IOException("Corrupt data chunk");
+		int y = band.getInt(), rows = band.getInt();
+		int width = result.getWidth();
+		if (y < 0 || rows < 0 || y + rows > result.getHeight())
+			throw new IOException("Corrupt data chunk");
+		int offset = y * width, n = rows * width;
+
+		byte[] raw = new byte[n * 3];
+		Inflater inflater = new Inflater();
+		inflater.setInput(band.array(), band.arrayOffset() + band.position(),
+				band.remaining());
+		try {
+			int read = 0;
+			while (read < raw.length && !inflater.finished())
+				read += inflater.inflate(raw, read, raw.length - read);
+			if (read != raw.length)
+				throw new IOException("Corrupt data chunk");
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt data chunk", e);
+		} finally {
+			inflater.end();
+		}
+
+		ByteBuffer buf = ByteBuffer.wrap(raw);
+		buf.get(result.getRootData(), offset, n);
+		buf.asShortBuffer().get(result.getIterationData(), offset, n);
+	}
+
+	/**
+	 * Writes a chunk
+	 */
+	private static void writeChunk(FileChannel ch, int type, byte[] payload)
+			throws IOException {
+		ByteBuffer head = ByteBuffer.allocate(8);
+		head.putInt(type).putInt(payload.length).flip();
+		writeFully(ch, head);
+		writeFully(ch, ByteBuffer.wrap(payload));
+	}
+
+	private static void writeFully(FileChannel ch, ByteBuffer buf)
+			throws IOException {
+		while (buf.hasRemaining())
+			ch.write(buf);
+	}
+
+	/**
+	 * Waits for a future and unwraps its exception
+	 */
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	public String getFormula() {
+		return formula;
+	}
+
+	public Viewport getViewport() {
+		return viewport;
+	}
+
+	public String getSolver() {
+		return solver;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public double getEpsilon() {
+		return epsilon;
+	}
+
+	/**
+	 * Returns the sample pattern of the render; older files only
+	 * have it if the samples are computed
+	 *
+	 * @return The pattern or <code>null</code>
+	 */
+	public SamplePattern getAntiAliasing() {
+		if (antiAliasing == null && result.getSamples() != null)
+			return result.getSamples().getPattern();
+		return antiAliasing;
+	}
+
+	public boolean isShading() {
+		return shading;
+	}
+
+	public RenderResult getResult() {
+		return result;
+	}
+
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects live metrics of the renders and publishes them as JMX
+ * MBean (see {@link #NAME}), so they can be watched with jconsole
+ * or any other JMX client. The workers report their results once
+ * per finished tile, so collecting the metrics costs next to nothing.
+ * <p>
+ * Every render has its own counters ({@link Render}), so renders
+ * which run at the same time or are still stopping after they were
+ * cancelled don't mix up their values. The values refer to the most
+ * recently started render, {@link #getActiveRenders()} lists all
+ * running renders; the totals and the cache statistics are kept for
+ * the whole runtime of the program
+ *
+ * @author maxstrauch
+ */
+public class RenderMetrics implements RenderMetricsMBean {
+
+	/**
+	 * The name of the MBean
+	 */
+	public static final String NAME = "newtonfractal:type=RenderMetrics";
+
+	/**
+	 * Number of buckets of the iteration histogram
+	 */
+	public static final int HISTOGRAM_BUCKETS = 11;
+
+	/**
+	 * The registered instance
+	 */
+	private static final RenderMetrics INSTANCE = register(new RenderMetrics());
+
+	/**
+	 * The running renders
+	 */
+	private final Set<Render> active = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The most recently started render or <code>null</code>
+	 */
+	private volatile Render latest;
+
+	/**
+	 * Counters for the whole runtime
+	 */
+	private final AtomicLong renders = new AtomicLong(), totalPixels = new AtomicLong(),
+			formulaHits = new AtomicLong(), formulaMisses = new AtomicLong(),
+			tableHits = new AtomicLong(), tableMisses = new AtomicLong();
+
+	/**
+	 * Returns the registered instance
+	 */
+	public static RenderMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers the metrics on the platform MBean server; the
+	 * metrics work without JMX too
+	 */
+	private static RenderMetrics register(RenderMetrics metrics) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+					new ObjectName(NAME));
+		} catch (JMException e) {
+			System.err.println("Couldn't register the metrics MBean: " + e);
+		} catch (SecurityException e) {
+			System.err.println("Couldn't register the metrics MBean: " + e);
+		}
+		return metrics;
+	}
+
+	/**
+	 * Called when a render starts
+	 *
+	 * @param registry The registry of the roots of the render
+	 * @return The counters of the render; the render reports its
+	 * tiles and its end to them
+	 */
+	public Render renderStarted(RootRegistry registry) {
+		Render render = new Render(registry);
+		active.add(render);
+		latest = render;
+		renders.incrementAndGet();
+		return render;
+	}
+
+	/**
+	 * Returns the histogram bucket of an iteration count
+	 */
+	public static int bucket(int iterations) {
+		return Math.min(HISTOGRAM_BUCKETS - 1,
+				32 - Integer.numberOfLeadingZeros(Math.max(0, iterations)));
+	}
+
+	/**
+	 * Counts a lookup in the cache of compiled formulas
+	 */
+	void formulaCacheLookup(boolean hit) {
+		(hit ? formulaHits : formulaMisses).incrementAndGet();
+	}
+
+	/**
+	 * Counts a lookup of a color lookup table
+	 */
+	void colorTableLookup(boolean hit) {
+		(hit ? tableHits : tableMisses).incrementAndGet();
+	}
+
+	/**
+	 * Returns the most recently started render; an empty one if
+	 * there is none yet
+	 */
+	private Render current() {
+		Render render = latest;
+		return render != null ? render : Render.NONE;
+	}
+
+	@Override
+	public boolean isRendering() {
+		return !active.isEmpty();
+	}
+
+	@Override
+	public String[] getActiveRenders() {
+		List<String> result = new ArrayList<String>();
+		for (Render render : active)
+			result.add(render.toString());
+		return result.toArray(new String[result.size()]);
+	}
+
+	@Override
+	public long getRenderCount() {
+		return renders.get();
+	}
+
+	@Override
+	public long getPixels() {
+		return current().pixels.get();
+	}
+
+	@Override
+	public long getTotalPixels() {
+		return totalPixels.get();
+	}
+
+	@Override
+	public double getElapsedTime() {
+		return current().elapsedNanos() / 1e6;
+	}
+
+	@Override
+	public double getPixelsPerSecond() {
+		return current().getPixelsPerSecond();
+	}
+
+	@Override
+	public double getIterationsPerSecond() {
+		Render render = current();
+		return render.perSecond(render.iterations.get());
+	}
+
+	@Override
+	public long[] getIterationHistogram() {
+		Render render = current();
+		long[] result = new long[HISTOGRAM_BUCKETS];
+		for (int i = 0; i < result.length; i++)
+			result[i] = render.histogram.get(i);
+		return result;
+	}
+
+	@Override
+	public double getNonConvergedRatio() {
+		return current().getNonConvergedRatio();
+	}
+
+	@Override
+	public double getTimeToFirstTile() {
+		return current().getTimeToFirstTile();
+	}
+
+	@Override
+	public String[] getThreadNames() {
+		return current().busy.keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public double[] getThreadUtilization() {
+		Render render = current();
+		List<AtomicLong> times = new ArrayList<AtomicLong>(render.busy.values());
+
+		double elapsed = render.elapsedNanos();
+		double[] result = new double[times.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = elapsed <= 0 ? 0 : Math.min(1, times.get(i).get() / elapsed);
+		return result;
+	}
+
+	@Override
+	public int getRootCount() {
+		return current().getRootCount();
+	}
+
+	@Override
+	public double getFormulaCacheHitRate() {
+		return rate(formulaHits.get(), formulaMisses.get());
+	}
+
+	@Override
+	public double getColorTableCacheHitRate() {
+		return rate(tableHits.get(), tableMisses.get());
+	}
+
+	@Override
+	public void reset() {
+		for (Render render : active)
+			render.reset();
+		if (latest != null && !active.contains(latest))
+			latest = null;
+		renders.set(0);
+		totalPixels.set(0);
+		formulaHits.set(0);
+		formulaMisses.set(0);
+		tableHits.set(0);
+		tableMisses.set(0);
+	}
+
+	private static double rate(long hits, long misses) {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	/**
+	 * Returns a one line summary of the metrics
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(current());
+		sb.append(", threads");
+		for (double u : getThreadUtilization())
+			sb.append(String.format(" %.0f%%", 100 * u));
+		sb.append(String.format(", formula cache %.0f%%, color table cache %.0f%%",
+				100 * getFormulaCacheHitRate(), 100 * getColorTableCacheHitRate()));
+		if (active.size() > 1)
+			sb.append(", ").append(active.size()).append(" renders running");
+		return sb.toString();
+	}
+
+	/**
+	 * The counters of one render
+	 */
+	public static class Render {
+
+		/**
+		 * Stands in for the render before the first render started
+		 */
+		private static final Render NONE = new Render(null);
+
+		/**
+		 * Counters of the render
+		 */
+		private final AtomicLong pixels = new AtomicLong(), 
+				iterations = new AtomicLong(), nonConverged = new AtomicLong();
+		private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+		/**
+		 * Busy time of every worker thread in nanoseconds
+		 */
+		private final ConcurrentMap<String, AtomicLong> busy = new ConcurrentHashMap<String, AtomicLong>();
+
+		/**
+		 * Start and end of the render and the end of its first tile
+		 * (nanoseconds, <code>0</code> if not yet reached)
+		 */
+		private volatile long started, ended, firstTile;
+
+		/**
+		 * The roots of the render
+		 */
+		private final RootRegistry registry;
+
+		private Render(RootRegistry registry) {
+			this.registry = registry;
+			started = registry == null ? 0 : System.nanoTime();
+		}
+
+		/**
+		 * Called by a worker thread when it finished a tile
+		 *
+		 * @param pixels The number of pixels computed
+		 * @param iterations The sum of the iterations of these pixels
+		 * @param nonConverged The number of these pixels without root
+		 * @param histogram The iteration histogram of these pixels;
+		 * it is cleared afterwards
+		 * @param nanos The time needed for the tile
+		 */
+		public void tileFinished(long pixels, long iterations, long nonConverged,
+				long[] histogram, long nanos) {
+			if (firstTile == 0)
+				firstTile = System.nanoTime();
+
+			this.pixels.addAndGet(pixels);
+			this.iterations.addAndGet(iterations);
+			this.nonConverged.addAndGet(nonConverged);
+			INSTANCE.totalPixels.addAndGet(pixels);
+			for (int i = 0; i < histogram.length; i++) {
+				if (histogram[i] != 0) {
+					this.histogram.addAndGet(i, histogram[i]);
+					histogram[i] = 0;
+				}
+			}
+
+			String thread = Thread.currentThread().getName();
+			AtomicLong time = busy.get(thread);
+			if (time == null) {
+				AtomicLong created = new AtomicLong();
+				time = busy.putIfAbsent(thread, created);
+				if (time == null)
+					time = created;
+			}
+			time.addAndGet(nanos);
+		}
+
+		/**
+		 * Called when the render is finished or cancelled
+		 */
+		public void finished() {
+			ended = System.nanoTime();
+			INSTANCE.active.remove(this);
+		}
+
+		/**
+		 * Resets the counters
+		 */
+		private void reset() {
+			pixels.set(0);
+			iterations.set(0);
+			nonConverged.set(0);
+			for (int i = 0; i < HISTOGRAM_BUCKETS; i++)
+				histogram.set(i, 0);
+			busy.clear();
+			firstTile = 0;
+		}
+
+		private long elapsedNanos() {
+			long start = started, end = ended;
+			if (start == 0)
+				return 0;
+			return (end == 0 ? System.nanoTime() : end) - start;
+		}
+
+		private double perSecond(long count) {
+			long nanos = elapsedNanos();
+			return nanos <= 0 ? 0 : count * 1e9 / nanos;
+		}
+
+		private double getPixelsPerSecond() {
+			return perSecond(pixels.get());
+		}
+
+		private double getNonConvergedRatio() {
+			long n = pixels.get();
+			return n == 0 ? 0 : (double) nonConverged.get() / n;
+		}
+
+		private double getTimeToFirstTile() {
+			long first = firstTile;
+			return first == 0 ? -1 : (first - started) / 1e6;
+		}
+
+		private int getRootCount() {
+			return registry == null ? 0 : registry.size();
+		}
+
+		/**
+		 * Returns a one line summary of the render
+		 */
+		@Override
+		public String toString() {
+			return String.format("%.0f px/s, %.0f it/s, %d px, non-converged %.2f%%, " +
+					"roots %d, first tile %.1f ms",
+					getPixelsPerSecond(), perSecond(iterations.get()), pixels.get(),
+					100 * getNonConvergedRatio(), getRootCount(), getTimeToFirstTile());
+		}
+
+	}
+
+}
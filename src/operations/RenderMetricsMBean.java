@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * The management interface of {@link RenderMetrics}. All values
+ * refer to the most recently started render unless stated otherwise
+ *
+ * @author maxstrauch
+ */
+public interface RenderMetricsMBean {
+
+	/**
+	 * Returns <code>true</code> while a render is running
+	 */
+	boolean isRendering();
+
+	/**
+	 * Returns a one line summary of every running render
+	 */
+	String[] getActiveRenders();
+
+	/**
+	 * Returns the number of renders started since the start of
+	 * the program
+	 */
+	long getRenderCount();
+
+	/**
+	 * Returns the number of pixels computed
+	 */
+	long getPixels();
+
+	/**
+	 * Returns the number of pixels computed by all renders since
+	 * the start of the program
+	 */
+	long getTotalPixels();
+
+	/**
+	 * Returns the time since the render started (or its
+	 * duration) in milliseconds
+	 */
+	double getElapsedTime();
+
+	double getPixelsPerSecond();
+
+	double getIterationsPerSecond();
+
+	/**
+	 * Returns the number of pixels by iteration count: index
+	 * <code>0</code> counts pixels without iterations and index
+	 * <code>k</code> pixels with <code>2^(k-1)</code> to
+	 * <code>2^k - 1</code> iterations; the last index counts
+	 * all pixels above
+	 */
+	long[] getIterationHistogram();
+
+	/**
+	 * Returns the fraction of the pixels for which the Newton
+	 * method didn't converge
+	 */
+	double getNonConvergedRatio();
+
+	/**
+	 * Returns the time until the first tile was finished in
+	 * milliseconds or <code>-1</code>
+	 */
+	double getTimeToFirstTile();
+
+	/**
+	 * Returns the names of the worker threads in the order of
+	 * {@link #getThreadUtilization()}
+	 */
+	String[] getThreadNames();
+
+	/**
+	 * Returns the fraction of the elapsed time every worker
+	 * thread was busy
+	 */
+	double[] getThreadUtilization();
+
+	/**
+	 * Returns the number of roots found
+	 */
+	int getRootCount();
+
+	/**
+	 * Returns the fraction of formulas found in the cache of
+	 * compiled formulas (since the start of the program)
+	 */
+	double getFormulaCacheHitRate();
+
+	/**
+	 * Returns the fraction of color lookup tables which could be
+	 * reused (since the start of the program)
+	 */
+	double getColorTableCacheHitRate();
+
+	/**
+	 * Resets all counters
+	 */
+	void reset();
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.util.Arrays;
+
+/**
+ * The raw result of a fractal computation: for every pixel the
+ * id of the root (see {@link RootRegistry}) and the number of
+ * Newton iterations needed to find it. Three bytes per pixel;
+ * the colors are produced from this by a {@link Colorizer}
+ *
+ * @author maxstrauch
+ */
+public class RenderResult {
+
+	/**
+	 * Iteration count of a pixel which isn't computed yet
+	 */
+	public static final short UNKNOWN = -1;
+
+	/**
+	 * Size of the result
+	 */
+	private final int width, height;
+
+	/**
+	 * Root id per pixel (row by row)
+	 */
+	private final byte[] roots;
+
+	/**
+	 * Iteration count per pixel (row by row)
+	 */
+	private final short[] iterations;
+
+	/**
+	 * The roots the ids refer to
+	 */
+	private final RootRegistry registry;
+
+	/**
+	 * Additional samples for the borders (may be <code>null</code>)
+	 */
+	private volatile SampleSet samples;
+
+	/**
+	 * Creates a new result where all pixels are unknown
+	 *
+	 * @param width Width in pixels
+	 * @param height Height in pixels
+	 */
+	public RenderResult(int width, int height) {
+		this(width, height, new RootRegistry());
+	}
+
+	/**
+	 * Creates a new result where all pixels are unknown
+	 *
+	 * @param width Width in pixels
+	 * @param height Height in pixels
+	 * @param registry The registry of the roots
+	 */
+	public RenderResult(int width, int height, RootRegistry registry) {
+		this.width = width;
+		this.height = height;
+		this.registry = registry;
+		roots = new byte[width * height];
+		iterations = new short[width * height];
+		Arrays.fill(iterations, UNKNOWN);
+	}
+
+	/**
+	 * Creates a result for another viewport which takes over all
+	 * pixels of a previous result showing exactly the same points,
+	 * e.g. every second pixel of every second row after zooming in
+	 * by two. The roots are shared with the previous result
+	 *
+	 * @param previous The previous result
+	 * @param from The viewport of the previous result
+	 * @param to The viewport of the new result
+	 * @return The new result; all other pixels are unknown
+	 */
+	public static RenderResult remap(RenderResult previous, Viewport from, Viewport to) {
+		RenderResult result = new RenderResult(to.getWidth(), to.getHeight(),
+				previous.registry);
+		int[] columns = from.mapColumns(to), rows = from.mapRows(to);
+
+		for (int y = 0; y < rows.length; y++) {
+			if (rows[y] < 0)
+				continue;
+
+			// Copy runs of consecutive columns (e.g. after panning) at once
+			int offset = y * result.width, prevOffset = rows[y] * previous.width;
+			for (int x = 0; x < columns.length; ) {
+				if (columns[x] < 0) {
+					x++;
+					continue;
+				}
+
+				int run = 1;
+				while (x + run < columns.length && columns[x + run] == columns[x] + run)
+					run++;
+				System.arraycopy(previous.roots, prevOffset + columns[x], 
+						result.roots, offset + x, run);
+				System.arraycopy(previous.iterations, prevOffset + columns[x], 
+						result.iterations, offset + x, run);
+				x += run;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Copies an area of another result of the same size into this
+	 * result
+	 *
+	 * @param from The other result
+	 * @param x The first column of the area
+	 * @param y The first row of the area
+	 * @param w The width of the area
+	 * @param h The height of the area
+	 */
+	public void copy(RenderResult from, int x, int y, int w, int h) {
+		for (int j = y; j < y + h; j++) {
+			System.arraycopy(from.roots, j * width + x, roots, j * width + x, w);
+			System.arraycopy(from.iterations, j * width + x, iterations, j * width + x, w);
+		}
+	}
+
+	/**
+	 * Returns the number of pixels already computed
+	 */
+	public int getKnownCount() {
+		int known = 0;
+		for (short it : iterations)
+			if (it != UNKNOWN)
+				known++;
+		return known;
+	}
+
+	/**
+	 * Stores the result for one pixel
+	 *
+	 * @param x The x coordinate
+	 * @param y The y coordinate
+	 * @param root The id of the root
+	 * @param iterations The number of iterations
+	 */
+	public void set(int x, int y, int root, int iterations) {
+		int i = y * width + x;
+		roots[i] = (byte) root;
+		this.iterations[i] = (short) Math.min(iterations, Short.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the root id of a pixel
+	 */
+	public int getRoot(int x, int y) {
+		return roots[y * width + x] & 0xFF;
+	}
+
+	/**
+	 * Returns the iteration count of a pixel or {@link #UNKNOWN}
+	 */
+	public int getIterations(int x, int y) {
+		return iterations[y * width + x];
+	}
+
+	/**
+	 * Checks if a pixel is already computed
+	 */
+	public boolean isKnown(int x, int y) {
+		return iterations[y * width + x] != UNKNOWN;
+	}
+
+	/**
+	 * Direct access to the root ids (row by row)
+	 */
+	byte[] getRootData() {
+		return roots;
+	}
+
+	/**
+	 * Direct access to the iteration counts (row by row)
+	 */
+	short[] getIterationData() {
+		return iterations;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public RootRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Returns the anti-aliasing samples
+	 *
+	 * @return The samples or <code>null</code> if the result
+	 * isn't anti-aliased
+	 */
+	public SampleSet getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Attaches anti-aliasing samples to this result
+	 *
+	 * @param samples The samples or <code>null</code> to remove them
+	 */
+	public void setSamples(SampleSet samples) {
+		this.samples = samples;
+	}
+
+}
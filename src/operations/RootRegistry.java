@@ -0,0 +1,168 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * Assigns a compact id to every complex root found by the
+ * Newton method. The id <code>0</code> is reserved for "no root"
+ * (the computation did not converge or ended in the origin),
+ * all other roots get the ids <code>1</code> to {@link #MAX_ROOTS}
+ * in order of their discovery
+ *
+ * @author maxstrauch
+ */
+public class RootRegistry {
+
+	/**
+	 * The id of "no root"
+	 */
+	public static final int NONE = 0;
+
+	/**
+	 * The maximal number of distinguishable roots (the ids
+	 * have to fit into one byte)
+	 */
+	public static final int MAX_ROOTS = 255;
+
+	/**
+	 * Two roots closer than this (sum of the absolute differences
+	 * of re and im part) are considered to be the same root. This
+	 * is much tighter than the tolerance used for coloring, so the
+	 * roots can be merged later on without computing them again
+	 */
+	public static final double TOLERANCE = 1e-6;
+
+	/**
+	 * All known roots; the root with id <code>i</code> is stored
+	 * on index <code>i-1</code>. The array is replaced on every
+	 * change, so lookups need no lock
+	 */
+	private volatile double[][] roots = new double[0][];
+
+	/**
+	 * Returns the id of the given root and registers it if
+	 * it is unknown yet
+	 *
+	 * @param root The complex root
+	 * @return The id of the root or {@link #NONE}
+	 */
+	public int register(double[] root) {
+		int id = find(root);
+		return id >= 0 ? id : add(root);
+	}
+
+	/**
+	 * Adds a new root unless another thread added it meanwhile
+	 */
+	private synchronized int add(double[] root) {
+		int id = find(root);
+		if (id >= 0)
+			return id;
+
+		// No more ids left: use the nearest known root
+		double[][] known = roots;
+		if (known.length >= MAX_ROOTS)
+			return nearest(known, root);
+
+		double[][] extended = new double[known.length + 1][];
+		System.arraycopy(known, 0, extended, 0, known.length);
+		extended[known.length] = new double[] { root[0], root[1] };
+		roots = extended;
+		return extended.length;
+	}
+
+	/**
+	 * Looks up the id of the given root
+	 *
+	 * @param root The complex root
+	 * @return The id of the root, {@link #NONE} or <code>-1</code>
+	 * if the root is unknown
+	 */
+	public int find(double[] root) {
+		if (isNone(root))
+			return NONE;
+
+		double[][] known = roots;
+		for (int i = 0; i < known.length; i++) {
+			double[] value = known[i];
+			if (Math.abs(value[0]-root[0]) + Math.abs(value[1]-root[1]) < TOLERANCE)
+				return i + 1;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the root with the given id
+	 *
+	 * @param id The id of the root
+	 * @return The root or <code>null</code> for {@link #NONE}
+	 */
+	public double[] get(int id) {
+		return id == NONE ? null : roots[id - 1].clone();
+	}
+
+	/**
+	 * Returns the number of registered roots
+	 *
+	 * @return Number of roots (without {@link #NONE})
+	 */
+	public int size() {
+		return roots.length;
+	}
+
+	/**
+	 * Returns all registered roots ordered by their id
+	 *
+	 * @return The roots; the root with id <code>i</code> is on
+	 * index <code>i-1</code>
+	 */
+	public double[][] toArray() {
+		double[][] known = roots;
+		double[][] result = new double[known.length][];
+		for (int i = 0; i < result.length; i++)
+			result[i] = known[i].clone();
+		return result;
+	}
+
+	/**
+	 * Finds the nearest registered root
+	 */
+	private static int nearest(double[][] known, double[] root) {
+		int best = NONE;
+		double bestDist = Double.MAX_VALUE;
+		for (int i = 0; i < known.length; i++) {
+			double[] value = known[i];
+			double dist = Math.abs(value[0]-root[0]) + Math.abs(value[1]-root[1]);
+			if (dist < bestDist) {
+				bestDist = dist;
+				best = i + 1;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Checks if a root stands for "no root": NaN is returned by
+	 * the Newton method if it doesn't converge and the origin
+	 * has always been painted black
+	 */
+	private static boolean isNone(double[] root) {
+		return Double.isNaN(root[0]) || Double.isNaN(root[1]) ||
+				Math.abs(root[0]) + Math.abs(root[1]) < 1e-4;
+	}
+
+}
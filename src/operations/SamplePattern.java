@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * The positions of the samples used to anti-alias a pixel. The
+ * offsets are given in pixels relative to the center of the pixel,
+ * so all samples are within <code>[-0.5, 0.5]</code>
+ * 
+ * @author maxstrauch
+ */
+public enum SamplePattern {
+	
+	GRID_2X2("2x2", grid(2)),
+	
+	ROTATED_GRID("rgss", new double[] {
+			0.125, 0.375, 0.375, -0.125, -0.125, -0.375, -0.375, 0.125
+	}),
+	
+	GRID_3X3("3x3", grid(3)),
+	
+	GRID_4X4("4x4", grid(4));
+	
+	/**
+	 * The name of the pattern
+	 */
+	private final String name;
+	
+	/**
+	 * The offsets (x, y, x, y, ...)
+	 */
+	private final double[] offsets;
+	
+	private SamplePattern(String name, double[] offsets) {
+		this.name = name;
+		this.offsets = offsets;
+	}
+	
+	/**
+	 * Returns the number of samples per pixel
+	 */
+	public int size() {
+		return offsets.length / 2;
+	}
+	
+	/**
+	 * Returns the x offset of a sample
+	 */
+	public double getX(int sample) {
+		return offsets[2 * sample];
+	}
+	
+	/**
+	 * Returns the y offset of a sample
+	 */
+	public double getY(int sample) {
+		return offsets[2 * sample + 1];
+	}
+	
+	/**
+	 * Looks up a pattern by its name
+	 * 
+	 * @param name The name, e.g. "rgss"
+	 * @return The pattern
+	 */
+	public static SamplePattern byName(String name) {
+		for (SamplePattern p : values())
+			if (p.name.equals(name))
+				return p;
+		throw new IllegalArgumentException("Unknown sample pattern: " + name);
+	}
+	
+	/**
+	 * Creates the offsets of a regular grid with n * n samples
+	 */
+	private static double[] grid(int n) {
+		double[] offsets = new double[2 * n * n];
+		for (int j = 0; j < n; j++) {
+			for (int i = 0; i < n; i++) {
+				offsets[2 * (j * n + i)] = (i + 0.5) / n - 0.5;
+				offsets[2 * (j * n + i) + 1] = (j + 0.5) / n - 0.5;
+			}
+		}
+		return offsets;
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+	
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.util.Arrays;
+
+/**
+ * Additional samples for some pixels of a {@link RenderResult},
+ * used to anti-alias the borders between the basins of the roots.
+ * Only the pixels on a border are supersampled, so the samples are
+ * stored sparse: the indices of the pixels (row by row, ascending)
+ * and for each of them the root id and iteration count of every
+ * sample of the {@link SamplePattern}
+ *
+ * @author maxstrauch
+ */
+public class SampleSet {
+
+	/**
+	 * The positions of the samples
+	 */
+	private final SamplePattern pattern;
+
+	/**
+	 * The indices of the supersampled pixels (ascending)
+	 */
+	private final int[] pixels;
+
+	/**
+	 * Root id per sample
+	 */
+	private final byte[] roots;
+
+	/**
+	 * Iteration count per sample
+	 */
+	private final short[] iterations;
+
+	/**
+	 * Creates a sample set where all samples are unknown
+	 *
+	 * @param pattern The positions of the samples
+	 * @param pixels The indices of the pixels (ascending)
+	 */
+	public SampleSet(SamplePattern pattern, int[] pixels) {
+		this.pattern = pattern;
+		this.pixels = pixels;
+		roots = new byte[pixels.length * pattern.size()];
+		iterations = new short[pixels.length * pattern.size()];
+		Arrays.fill(iterations, RenderResult.UNKNOWN);
+	}
+
+	/**
+	 * Creates a sample set for all pixels of a result which have a
+	 * neighbor with another root
+	 *
+	 * @param result The result (single sampled)
+	 * @param pattern The positions of the samples
+	 * @return The sample set; the samples still have to be computed
+	 */
+	public static SampleSet forEdges(RenderResult result, SamplePattern pattern) {
+		byte[] roots = result.getRootData();
+		short[] its = result.getIterationData();
+		int width = result.getWidth(), height = result.getHeight();
+
+		int[] edges = new int[1024];
+		int count = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int i = y * width + x;
+				if (its[i] == RenderResult.UNKNOWN)
+					continue;
+
+				byte root = roots[i];
+				if ((x > 0 && differs(roots, its, i - 1, root)) ||
+						(x < width - 1 && differs(roots, its, i + 1, root)) ||
+						(y > 0 && differs(roots, its, i - width, root)) ||
+						(y < height - 1 && differs(roots, its, i + width, root))) {
+					if (count == edges.length)
+						edges = Arrays.copyOf(edges, 2 * count);
+					edges[count++] = i;
+				}
+			}
+		}
+
+		return new SampleSet(pattern, Arrays.copyOf(edges, count));
+	}
+
+	/**
+	 * Checks if a known pixel has another root
+	 */
+	private static boolean differs(byte[] roots, short[] its, int i, byte root) {
+		return its[i] != RenderResult.UNKNOWN && roots[i] != root;
+	}
+
+	/**
+	 * Stores the result of one sample
+	 *
+	 * @param index The index of the pixel in this set
+	 * @param sample The index of the sample in the pattern
+	 * @param root The id of the root
+	 * @param iterations The number of iterations
+	 */
+	public void set(int index, int sample, int root, int iterations) {
+		int i = index * pattern.size() + sample;
+		roots[i] = (byte) root;
+		this.iterations[i] = (short) Math.min(iterations, Short.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the root id of a sample
+	 */
+	public int getRoot(int index, int sample) {
+		return roots[index * pattern.size() + sample] & 0xFF;
+	}
+
+	/**
+	 * Returns the iteration count of a sample or
+	 * {@link RenderResult#UNKNOWN}
+	 */
+	public int getIterations(int index, int sample) {
+		return iterations[index * pattern.size() + sample];
+	}
+
+	/**
+	 * Returns the index (row by row) of a supersampled pixel
+	 */
+	public int getPixel(int index) {
+		return pixels[index];
+	}
+
+	/**
+	 * Returns the number of supersampled pixels
+	 */
+	public int size() {
+		return pixels.length;
+	}
+
+	/**
+	 * Finds the first supersampled pixel at or behind a pixel
+	 *
+	 * @param pixel The index of the pixel (row by row)
+	 * @return The index in this set; {@link #size()} if there is none
+	 */
+	public int indexOf(int pixel) {
+		int i = Arrays.binarySearch(pixels, pixel);
+		return i >= 0 ? i : -i - 1;
+	}
+
+	public SamplePattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Direct access to the pixel indices
+	 */
+	int[] getPixelData() {
+		return pixels;
+	}
+
+	/**
+	 * Direct access to the root ids
+	 */
+	byte[] getRootData() {
+		return roots;
+	}
+
+	/**
+	 * Direct access to the iteration counts
+	 */
+	short[] getIterationData() {
+		return iterations;
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * The iteration schemes to find the roots. Every scheme computes
+ * the step <code>d</code> of one iteration <code>x - d</code> from
+ * the values of the function and its derivations at <code>x</code>.
+ * The schemes of higher order need the 2nd derivation, which costs
+ * about half an evaluation more, but need far fewer iterations for
+ * most polynomials
+ * 
+ * @author maxstrauch
+ */
+public enum Solver {
+	
+	/**
+	 * The Newton method: <code>d = f / f'</code>
+	 */
+	NEWTON("newton", false) {
+		@Override
+		public void step(double[] v, double[] d) {
+			Formula.div(v[0], v[1], v[2], v[3], d, 0);
+		}
+	},
+	
+	/**
+	 * The Halley method (Householder method of order 2); converges
+	 * cubically: <code>d = f f' / (f'^2 - f f'' / 2)</code>
+	 */
+	HALLEY("halley", true) {
+		@Override
+		public void step(double[] v, double[] d) {
+			double fr = v[0], fi = v[1], dr = v[2], di = v[3];
+			double hr = (fr * v[4] - fi * v[5]) / 2, hi = (fr * v[5] + fi * v[4]) / 2;
+			Formula.div(fr * dr - fi * di, fr * di + fi * dr, 
+					dr * dr - di * di - hr, 2 * dr * di - hi, d, 0);
+		}
+	},
+	
+	/**
+	 * The Schroeder method, i.e. the Newton method for
+	 * <code>f / f'</code>; converges quadratically to multiple roots
+	 * as well: <code>d = f f' / (f'^2 - f f'')</code>
+	 */
+	SCHROEDER("schroeder", true) {
+		@Override
+		public void step(double[] v, double[] d) {
+			double fr = v[0], fi = v[1], dr = v[2], di = v[3];
+			double hr = fr * v[4] - fi * v[5], hi = fr * v[5] + fi * v[4];
+			Formula.div(fr * dr - fi * di, fr * di + fi * dr, 
+					dr * dr - di * di - hr, 2 * dr * di - hi, d, 0);
+		}
+	},
+	
+	/**
+	 * The relaxed Newton method: <code>d = a f / f'</code> with
+	 * <code>a = </code>{@link Solver#RELAXATION}; converges linearly
+	 * but changes the shape of the basins
+	 */
+	RELAXED("relaxed", false) {
+		@Override
+		public void step(double[] v, double[] d) {
+			Formula.div(v[0], v[1], v[2], v[3], d, 0);
+			d[0] *= RELAXATION;
+			d[1] *= RELAXATION;
+		}
+	};
+	
+	/**
+	 * The factor of the relaxed Newton method
+	 */
+	public static final double RELAXATION = 0.5;
+	
+	/**
+	 * The name of the scheme
+	 */
+	private final String name;
+	
+	/**
+	 * If the 2nd derivation is needed
+	 */
+	private final boolean secondDerivation;
+	
+	private Solver(String name, boolean secondDerivation) {
+		this.name = name;
+		this.secondDerivation = secondDerivation;
+	}
+	
+	/**
+	 * Computes the step of one iteration
+	 * 
+	 * @param v f(x), f'(x) and f''(x) (re, im each); f''(x) only if
+	 * {@link #needsSecondDerivation()}
+	 * @param d The step (re, im)
+	 */
+	public abstract void step(double[] v, double[] d);
+	
+	/**
+	 * Checks if the 2nd derivation is needed by
+	 * {@link #step(double[], double[])}
+	 */
+	public boolean needsSecondDerivation() {
+		return secondDerivation;
+	}
+	
+	/**
+	 * Looks up a scheme by its name
+	 * 
+	 * @param name The name, e.g. "halley"
+	 * @return The scheme
+	 */
+	public static Solver byName(String name) {
+		for (Solver s : values())
+			if (s.name.equals(name))
+				return s;
+		throw new IllegalArgumentException("Unknown solver: " + name);
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+	
+}
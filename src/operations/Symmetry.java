@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mirror symmetries of a fractal within a viewport. A formula with
+ * real coefficients maps conjugated numbers to conjugated values, so
+ * the pixel at <code>conj(x)</code> converges to the conjugated root
+ * after the same number of iterations. If the formula is also even
+ * or odd, the same holds for <code>-conj(x)</code> (the mirror image
+ * at the imaginary axis). The solvers keep these symmetries.
+ * <p>
+ * Only the pixels of a rectangular region have to be computed; all
+ * other pixels are mirror images of pixels of the region and are
+ * filled by copying them with the mirrored roots. Rotational
+ * symmetries (e.g. of <code>x^3-1</code>) don't map pixels onto
+ * pixels and are not used
+ *
+ * @author maxstrauch
+ */
+public class Symmetry {
+
+	/**
+	 * For every row and column the row or column of the region it
+	 * is a mirror image of (itself within the region)
+	 */
+	private final int[] rows, columns;
+
+	/**
+	 * The region to compute
+	 */
+	private final Tile region;
+
+	private Symmetry(int[] rows, int[] columns) {
+		this.rows = rows;
+		this.columns = columns;
+		int[] r = range(rows), c = range(columns);
+		region = new Tile(c[0], r[0], c[1] - c[0] + 1, r[1] - r[0] + 1);
+	}
+
+	/**
+	 * Finds the symmetries of a formula within a viewport
+	 *
+	 * @param formula The formula
+	 * @param viewport The viewport
+	 * @return The symmetries or <code>null</code> if no pixel is the
+	 * mirror image of another one
+	 */
+	public static Symmetry of(Formula formula, Viewport viewport) {
+		if (!formula.isReal())
+			return null;
+
+		int[] columns;
+		if (formula.getParity() != 0) {
+			columns = viewport.mirrorColumns();
+		} else {
+			columns = new int[viewport.getWidth()];
+			Arrays.fill(columns, -1);
+		}
+
+		Symmetry symmetry = new Symmetry(fold(viewport.mirrorRows()), fold(columns));
+		if (symmetry.region.size() == viewport.getWidth() * viewport.getHeight())
+			return null;
+		return symmetry;
+	}
+
+	/**
+	 * Folds an axis at its mirror line: the pixels on one side are
+	 * mapped to their mirror images on the other side, so the
+	 * remaining pixels form a single range
+	 *
+	 * @param mirror The mirror image of every pixel or <code>-1</code>
+	 * @return The source of every pixel
+	 */
+	private static int[] fold(int[] mirror) {
+		int n = mirror.length;
+		int[] map = new int[n];
+		for (int i = 0; i < n; i++)
+			map[i] = i;
+		if (n == 0)
+			return map;
+
+		// The side of the image where the mirror line is closer to the
+		// border is mapped to the other side
+		boolean last = mirror[n - 1] >= 0, first = mirror[0] >= 0;
+		for (int i = 0; i < n; i++)
+			if (last ? mirror[i] >= 0 && mirror[i] < i : first && mirror[i] > i)
+				map[i] = mirror[i];
+		return map;
+	}
+
+	/**
+	 * Returns the first and last pixel of an axis which is its own
+	 * source
+	 */
+	private static int[] range(int[] map) {
+		int from = 0, to = map.length - 1;
+		while (from < to && map[from] != from)
+			from++;
+		while (to > from && map[to] != to)
+			to--;
+		return new int[] { from, to };
+	}
+
+	/**
+	 * Returns the region to compute
+	 */
+	public Tile getRegion() {
+		return region;
+	}
+
+	/**
+	 * Splits the part of the image outside of the region into tiles
+	 *
+	 * @param size Width and height of a tile
+	 * @return The tiles
+	 */
+	public List<Tile> getMirroredTiles(int size) {
+		int x = region.getX(), y = region.getY(), w = region.getWidth(), h = region.getHeight();
+		int right = x + w, bottom = y + h;
+		List<Tile> tiles = new ArrayList<Tile>();
+		TileScheduler.tiles(new Tile(0, 0, columns.length, y), size, tiles);
+		TileScheduler.tiles(new Tile(0, bottom, columns.length, rows.length - bottom), size, tiles);
+		TileScheduler.tiles(new Tile(0, y, x, h), size, tiles);
+		TileScheduler.tiles(new Tile(right, y, columns.length - right, h), size, tiles);
+		return tiles;
+	}
+
+	/**
+	 * Returns the column of the region a column is the mirror
+	 * image of
+	 */
+	public int getSourceColumn(int x) {
+		return columns[x];
+	}
+
+	/**
+	 * Returns the row of the region a row is the mirror image of
+	 */
+	public int getSourceRow(int y) {
+		return rows[y];
+	}
+
+}
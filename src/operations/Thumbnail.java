@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * A small copy of an image scaled to a fixed size, e.g. for a
+ * preview. Every pixel of the thumbnail is the average of the pixels
+ * of the image it covers; it is updated area by area as parts of the
+ * image change, so drawing the thumbnail doesn't depend on the size
+ * of the image
+ *
+ * @author maxstrauch
+ */
+public class Thumbnail {
+
+	/**
+	 * The scaled image
+	 */
+	private final BufferedImage image;
+
+	/**
+	 * Creates an empty (black) thumbnail
+	 *
+	 * @param width The width of the thumbnail
+	 * @param height The height of the thumbnail
+	 */
+	public Thumbnail(int width, int height) {
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	}
+
+	/**
+	 * Scales a whole image into the thumbnail
+	 *
+	 * @param source The image
+	 */
+	public void update(BufferedImage source) {
+		update(source, new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+	}
+
+	/**
+	 * Updates the pixels of the thumbnail which cover a changed area
+	 * of the image
+	 *
+	 * @param source The image
+	 * @param area The changed area of the image
+	 */
+	public void update(BufferedImage source, Rectangle area) {
+		int w = source.getWidth(), h = source.getHeight();
+		int x0 = (int) ((long) area.x * image.getWidth() / w);
+		int x1 = (int) (((long) (area.x + area.width) * image.getWidth() + w - 1) / w);
+		int y0 = (int) ((long) area.y * image.getHeight() / h);
+		int y1 = (int) (((long) (area.y + area.height) * image.getHeight() + h - 1) / h);
+		x1 = Math.min(x1, image.getWidth());
+		y1 = Math.min(y1, image.getHeight());
+		if (x0 >= x1 || y0 >= y1)
+			return;
+
+		// The columns of the image covered by the changed columns
+		int left = start(x0, w, image.getWidth());
+		int right = end(x1 - 1, w, image.getWidth());
+		int[] rgb = new int[right - left];
+		int[] row = new int[x1 - x0];
+		for (int ty = y0; ty < y1; ty++) {
+			int top = start(ty, h, image.getHeight()), bottom = end(ty, h, image.getHeight());
+			long[] sums = new long[3 * (x1 - x0)];
+			for (int y = top; y < bottom; y++) {
+				source.getRGB(left, y, rgb.length, 1, rgb, 0, rgb.length);
+				for (int tx = x0; tx < x1; tx++) {
+					int s = 3 * (tx - x0);
+					for (int x = start(tx, w, image.getWidth()); x < end(tx, w, image.getWidth()); x++) {
+						int color = rgb[x - left];
+						sums[s] += (color >> 16) & 0xFF;
+						sums[s + 1] += (color >> 8) & 0xFF;
+						sums[s + 2] += color & 0xFF;
+					}
+				}
+			}
+
+			for (int tx = x0; tx < x1; tx++) {
+				int s = 3 * (tx - x0);
+				long n = (long) (bottom - top) * (end(tx, w, image.getWidth()) 
+						- start(tx, w, image.getWidth()));
+				row[tx - x0] = (int) (sums[s] / n) << 16 | (int) (sums[s + 1] / n) << 8 
+						| (int) (sums[s + 2] / n);
+			}
+			image.setRGB(x0, ty, x1 - x0, 1, row, 0, row.length);
+		}
+	}
+
+	/**
+	 * Returns the first pixel of the image covered by a pixel of the
+	 * thumbnail
+	 */
+	private static int start(int t, int size, int thumbnailSize) {
+		return (int) ((long) t * size / thumbnailSize);
+	}
+
+	/**
+	 * Returns the pixel after the last pixel of the image covered by
+	 * a pixel of the thumbnail (at least one pixel is covered)
+	 */
+	private static int end(int t, int size, int thumbnailSize) {
+		return Math.max(start(t, size, thumbnailSize) + 1,
+				(int) (((long) (t + 1) * size + thumbnailSize - 1) / thumbnailSize));
+	}
+
+	/**
+	 * Returns the thumbnail
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+}
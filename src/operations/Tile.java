@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * A rectangular part of an image which is computed as one piece
+ * of work
+ *
+ * @author maxstrauch
+ */
+public class Tile {
+
+	/**
+	 * Position and size in pixels
+	 */
+	private final int x, y, width, height;
+
+	/**
+	 * Creates a tile
+	 *
+	 * @param x Left border
+	 * @param y Top border
+	 * @param width Width in pixels
+	 * @param height Height in pixels
+	 */
+	public Tile(int x, int y, int width, int height) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Splits the tile into its four quarters (or halves if it
+	 * is only one pixel wide or high)
+	 *
+	 * @return The parts in Morton order
+	 */
+	public Tile[] split() {
+		int w = (width + 1) / 2, h = (height + 1) / 2;
+		if (width == 1)
+			return new Tile[] { new Tile(x, y, 1, h), new Tile(x, y + h, 1, height - h) };
+		if (height == 1)
+			return new Tile[] { new Tile(x, y, w, 1), new Tile(x + w, y, width - w, 1) };
+		return new Tile[] {
+				new Tile(x, y, w, h), new Tile(x + w, y, width - w, h),
+				new Tile(x, y + h, w, height - h), new Tile(x + w, y + h, width - w, height - h)
+		};
+	}
+
+	/**
+	 * Returns the number of pixels
+	 */
+	public int size() {
+		return width * height;
+	}
+
+	/**
+	 * Interleaves the bits of two coordinates (x in the even,
+	 * y in the odd bits): sorting by this code keeps neighboring
+	 * tiles close together
+	 *
+	 * @param x The column
+	 * @param y The row
+	 * @return The Morton code
+	 */
+	public static long morton(int x, int y) {
+		return spread(x) | (spread(y) << 1);
+	}
+
+	/**
+	 * Moves the bits of a number to the even bits
+	 */
+	private static long spread(int v) {
+		long r = v & 0xFFFFFFFFL;
+		r = (r | (r << 16)) & 0x0000FFFF0000FFFFL;
+		r = (r | (r << 8)) & 0x00FF00FF00FF00FFL;
+		r = (r | (r << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		r = (r | (r << 2)) & 0x3333333333333333L;
+		r = (r | (r << 1)) & 0x5555555555555555L;
+		return r;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public String toString() {
+		return width + "x" + height + "+" + x + "+" + y;
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of one tile computed by a worker thread
+ *
+ * @author maxstrauch
+ */
+@Name("newtonfractal.Tile")
+@Label("Tile")
+@Category("Newton Fractal")
+@Description("Computation of a part of a fractal image by one thread")
+class TileEvent extends Event {
+
+	@Label("X")
+	int x;
+
+	@Label("Y")
+	int y;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("Supersampling")
+	@Description("The tile contains the additional samples of the anti-aliasing")
+	boolean supersampling;
+
+	@Label("Pixels")
+	@Description("Number of pixels and samples computed")
+	long pixels;
+
+	@Label("Iterations")
+	@Description("Sum of the Newton iterations of all pixels")
+	long iterations;
+
+	@Label("Non-Converged")
+	@Description("Number of pixels for which the Newton method didn't converge")
+	long nonConverged;
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+/**
+ * Gets notified whenever a tile of a render is finished. The
+ * listener is called by the worker threads, so it has to be thread
+ * safe and should return quickly
+ *
+ * @author maxstrauch
+ */
+public interface TileListener {
+
+	/**
+	 * Called when all pixels of a tile are computed; tiles which
+	 * are completely taken over from a previous render are reported
+	 * before the computation starts
+	 *
+	 * @param result The result the tile belongs to
+	 * @param tile The finished tile
+	 */
+	void tileFinished(RenderResult result, Tile tile);
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Publishes the finished tiles of a render as colored images to any
+ * number of {@link java.util.concurrent.Flow.Subscriber subscribers},
+ * e.g. a panel, an exporter or a tile server. Every subscriber
+ * receives the tiles in its own thread and buffers at most
+ * {@link #BUFFER_SIZE} of them; if a buffer is full, the worker
+ * thread which finished the next tile waits until the subscriber
+ * requests more, so slow subscribers slow down the render instead
+ * of filling the memory. When the render is cancelled, waiting
+ * workers stop waiting and the publisher is closed exceptionally.
+ * <p>
+ * Subscribers receive only the tiles finished after they subscribed
+ * (subscribe before the render starts to get all of them). The
+ * publisher is completed when the render is finished and completed
+ * exceptionally if it is cancelled or fails. The tiles are
+ * published before the anti-aliasing of the borders
+ *
+ * @author maxstrauch
+ */
+public class TilePublisher extends SubmissionPublisher<TilePublisher.RenderedTile> 
+		implements TileListener {
+
+	/**
+	 * Maximal number of tiles buffered per subscriber
+	 */
+	public static final int BUFFER_SIZE = 64;
+
+	/**
+	 * Runs the subscribers of all publishers; every busy subscriber
+	 * gets a thread of its own (idle threads end after a minute), so
+	 * a slow subscriber never delays the others, not even on
+	 * machines where the common pool has a single thread
+	 */
+	private static final ExecutorService SUBSCRIBERS = Executors.newCachedThreadPool(
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "tile-subscriber");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Time between two checks for space in the buffers (ms)
+	 */
+	private static final long POLL_INTERVAL = 10;
+
+	/**
+	 * Creates the images of the tiles
+	 */
+	private final Colorizer colorizer;
+
+	/**
+	 * The render of the tiles or <code>null</code>
+	 */
+	private final Future<?> render;
+
+	/**
+	 * Lets only one worker at a time wait for space and submit
+	 */
+	private final Object submitting = new Object();
+
+	/**
+	 * Creates a publisher which delivers the tiles to every
+	 * subscriber in a thread of its own
+	 *
+	 * @param colorizer Creates the images of the tiles
+	 */
+	public TilePublisher(Colorizer colorizer) {
+		this(colorizer, SUBSCRIBERS, null);
+	}
+
+	/**
+	 * Creates a publisher which delivers the tiles to every
+	 * subscriber in a thread of its own and stops waiting for full
+	 * buffers when a render is cancelled
+	 *
+	 * @param colorizer Creates the images of the tiles
+	 * @param render The render of the tiles
+	 */
+	public TilePublisher(Colorizer colorizer, Future<?> render) {
+		this(colorizer, SUBSCRIBERS, render);
+	}
+
+	/**
+	 * Creates a publisher
+	 *
+	 * @param colorizer Creates the images of the tiles
+	 * @param executor Runs the subscribers
+	 * @param render The render of the tiles or <code>null</code>
+	 */
+	public TilePublisher(Colorizer colorizer, Executor executor, Future<?> render) {
+		super(executor, BUFFER_SIZE);
+		this.colorizer = colorizer;
+		this.render = render;
+	}
+
+	@Override
+	public void tileFinished(RenderResult result, Tile tile) {
+		// Nobody to paint the tile for
+		if (!hasSubscribers())
+			return;
+
+		RenderedTile item = new RenderedTile(tile, colorizer.colorizeArea(result, 
+				tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight()));
+
+		// submit() would wait for a full buffer without noticing that
+		// the render is cancelled, so the space is checked before
+		synchronized (submitting) {
+			while (estimateMaximumLag() >= getMaxBufferCapacity()) {
+				if (render != null && render.isCancelled()) {
+					closeExceptionally(new CancellationException());
+					return;
+				}
+				try {
+					Thread.sleep(POLL_INTERVAL);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			if (!isClosed())
+				submit(item);
+		}
+	}
+
+	/**
+	 * A finished tile with its image
+	 */
+	public static class RenderedTile {
+
+		/**
+		 * The position and size
+		 */
+		private final Tile tile;
+
+		/**
+		 * The colored pixels
+		 */
+		private final BufferedImage image;
+
+		public RenderedTile(Tile tile, BufferedImage image) {
+			this.tile = tile;
+			this.image = image;
+		}
+
+		public Tile getTile() {
+			return tile;
+		}
+
+		public BufferedImage getImage() {
+			return image;
+		}
+
+	}
+
+}
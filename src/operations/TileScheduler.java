@@ -0,0 +1,247 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Distributes the tiles of an image among the threads of a
+ * {@link ForkJoinPool}. The cost of a pixel differs by orders of
+ * magnitude (pixels close to a root converge after a few steps,
+ * pixels on the borders may need the maximal number of iterations),
+ * so rows split evenly among the threads leave most of them idle at
+ * the end of a render. Therefore:
+ * <ul>
+ * <li>the cost of every tile is estimated beforehand (e.g. by a
+ * coarse pilot pass)</li>
+ * <li>the tiles are kept in Morton order, so a thread works on
+ * neighboring tiles; the list is split recursively into halves of
+ * equal cost, the thread computes the more expensive half first
+ * and leaves the other one to be stolen by idle threads</li>
+ * <li>tiles which are too expensive to be a single piece of work
+ * and all tiles at the end of the render, when other threads run
+ * out of work, are split into quarters</li>
+ * </ul>
+ *
+ * @author maxstrauch
+ */
+public class TileScheduler {
+
+	/**
+	 * Tiles are never split into parts with fewer pixels
+	 */
+	public static final int MIN_TILE_SIZE = 16 * 16;
+
+	/**
+	 * Computes the pixels of a tile
+	 */
+	public interface Worker {
+
+		/**
+		 * Computes a tile; called by the threads of the pool
+		 *
+		 * @param tile The tile
+		 */
+		void render(Tile tile);
+
+	}
+
+	/**
+	 * The tiles in Morton order
+	 */
+	private final Tile[] tiles;
+
+	/**
+	 * The sum of the costs of the tiles before each index
+	 */
+	private final long[] prefix;
+
+	/**
+	 * Tiles with a higher cost are split
+	 */
+	private final long splitCost;
+
+	/**
+	 * Creates a scheduler
+	 *
+	 * @param tiles The tiles
+	 * @param costs The estimated cost of each tile (e.g. pixels
+	 * times iterations); tiles with the cost <code>0</code> are
+	 * skipped
+	 * @param parallelism The number of threads
+	 */
+	public TileScheduler(List<Tile> tiles, long[] costs, int parallelism) {
+		// Sort the tiles (and their costs) in Morton order
+		final long[] codes = new long[tiles.size()];
+		Integer[] order = new Integer[tiles.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			codes[i] = Tile.morton(tiles.get(i).getX(), tiles.get(i).getY());
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(codes[a], codes[b]);
+			}
+		});
+
+		List<Tile> sorted = new ArrayList<Tile>();
+		List<Long> sortedCosts = new ArrayList<Long>();
+		for (int i : order) {
+			if (costs[i] > 0) {
+				sorted.add(tiles.get(i));
+				sortedCosts.add(costs[i]);
+			}
+		}
+
+		this.tiles = sorted.toArray(new Tile[sorted.size()]);
+		prefix = new long[this.tiles.length + 1];
+		for (int i = 0; i < this.tiles.length; i++)
+			prefix[i+1] = prefix[i] + sortedCosts.get(i);
+
+		// At least 16 pieces of work per thread
+		splitCost = Math.max(1, prefix[this.tiles.length] / (16L * parallelism));
+	}
+
+	/**
+	 * Splits an image into square tiles
+	 *
+	 * @param width Width of the image
+	 * @param height Height of the image
+	 * @param size Width and height of a tile
+	 * @return The tiles row by row
+	 */
+	public static List<Tile> tiles(int width, int height, int size) {
+		List<Tile> tiles = new ArrayList<Tile>();
+		tiles(new Tile(0, 0, width, height), size, tiles);
+		return tiles;
+	}
+
+	/**
+	 * Splits a part of an image into square tiles
+	 *
+	 * @param area The part of the image
+	 * @param size Width and height of a tile
+	 * @param tiles Receives the tiles row by row
+	 */
+	public static void tiles(Tile area, int size, List<Tile> tiles) {
+		int right = area.getX() + area.getWidth(), bottom = area.getY() + area.getHeight();
+		for (int y = area.getY(); y < bottom; y += size)
+			for (int x = area.getX(); x < right; x += size)
+				tiles.add(new Tile(x, y, Math.min(size, right - x),
+						Math.min(size, bottom - y)));
+	}
+
+	/**
+	 * Computes all tiles and waits until they are finished
+	 *
+	 * @param pool The pool to use
+	 * @param worker Computes the tiles
+	 */
+	public void run(ForkJoinPool pool, Worker worker) {
+		if (tiles.length > 0)
+			pool.invoke(new RangeTask(worker, 0, tiles.length));
+	}
+
+	/**
+	 * Returns the number of tiles to compute
+	 */
+	public int size() {
+		return tiles.length;
+	}
+
+	/**
+	 * Works on a range of tiles
+	 */
+	private class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Worker worker;
+		private final int from, to;
+
+		RangeTask(Worker worker, int from, int to) {
+			this.worker = worker;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				new TileTask(worker, tiles[from], prefix[to] - prefix[from]).compute();
+				return;
+			}
+
+			// Split where half of the cost is reached
+			long half = prefix[from] + (prefix[to] - prefix[from]) / 2;
+			int middle = Arrays.binarySearch(prefix, from, to, half);
+			middle = middle < 0 ? -middle - 1 : middle;
+			middle = Math.max(from + 1, Math.min(to - 1, middle));
+
+			// The expensive half first, the other one may be stolen
+			RangeTask left = new RangeTask(worker, from, middle),
+					right = new RangeTask(worker, middle, to);
+			if (prefix[middle] - prefix[from] >= prefix[to] - prefix[middle])
+				invokeAll(left, right);
+			else
+				invokeAll(right, left);
+		}
+
+	}
+
+	/**
+	 * Works on a tile and splits it if needed
+	 */
+	private class TileTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Worker worker;
+		private final Tile tile;
+		private final long cost;
+
+		TileTask(Worker worker, Tile tile, long cost) {
+			this.worker = worker;
+			this.tile = tile;
+			this.cost = cost;
+		}
+
+		@Override
+		protected void compute() {
+			// Split expensive tiles and, if other threads run out
+			// of work, all tiles
+			if (tile.size() >= 4 * MIN_TILE_SIZE &&
+					(cost > splitCost || getSurplusQueuedTaskCount() <= 0)) {
+				Tile[] parts = tile.split();
+				List<TileTask> tasks = new ArrayList<TileTask>(parts.length);
+				for (Tile part : parts)
+					tasks.add(new TileTask(worker, part, cost * part.size() / tile.size()));
+				invokeAll(tasks);
+				return;
+			}
+
+			worker.render(tile);
+		}
+
+	}
+
+}
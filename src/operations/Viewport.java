@@ -0,0 +1,361 @@
+/*
+ * Copyright 2013 maxstrauch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package operations;
+
+import helpers.DoubleDouble;
+
+import java.math.BigDecimal;
+
+/**
+ * The area of the complex pane shown by a fractal image. The
+ * center is stored with double-double precision, so the pixel
+ * size can be far below the precision of a double relative to the
+ * center. The pixel <code>(x, y)</code> shows the complex number
+ * <code>center + (x - width/2) * step + (y - height/2) * step i</code>
+ *
+ * @author maxstrauch
+ */
+public class Viewport {
+
+	/**
+	 * Pixels of two viewports closer than this (in pixels) show
+	 * the same point
+	 */
+	private static final double MAP_TOLERANCE = 1e-6;
+
+	/**
+	 * The center as complex double-double number (re hi, re lo,
+	 * im hi, im lo)
+	 */
+	private final double[] center;
+
+	/**
+	 * The size of one pixel
+	 */
+	private final double step;
+
+	/**
+	 * The size of the image
+	 */
+	private final int width, height;
+
+	/**
+	 * Creates a viewport
+	 *
+	 * @param center The center (re hi, re lo, im hi, im lo)
+	 * @param step The size of one pixel
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 */
+	private Viewport(double[] center, double step, int width, int height) {
+		if (!(step > 0) || width <= 0 || height <= 0)
+			throw new IllegalArgumentException("At least one of the " +
+					"supplied arguments is bad");
+
+		this.center = center;
+		this.step = step;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Creates a viewport
+	 *
+	 * @param centerRe Re part of the center
+	 * @param centerIm Im part of the center
+	 * @param step The size of one pixel
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 */
+	public Viewport(BigDecimal centerRe, BigDecimal centerIm, double step,
+			int width, int height) {
+		this(toDD(centerRe, centerIm), step, width, height);
+	}
+
+	/**
+	 * Creates a viewport
+	 *
+	 * @param centerRe Re part of the center
+	 * @param centerIm Im part of the center
+	 * @param step The size of one pixel
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 */
+	public Viewport(double centerRe, double centerIm, double step,
+			int width, int height) {
+		this(new double[] { centerRe, 0, centerIm, 0 }, step, width, height);
+	}
+
+	/**
+	 * Creates the classic square viewport around the origin which
+	 * shows x, y in [-range, range]
+	 *
+	 * @param range The range of the image
+	 * @param step The size of one pixel
+	 * @return The viewport
+	 */
+	public static Viewport of(double range, double step) {
+		if (range < 0 || step < 0 || step > range)
+			throw new IllegalArgumentException("At least one of the " +
+					"supplied arguments is bad");
+
+		int size = 2 * (int) Math.round(range/step);
+		return new Viewport(0, 0, step, size, size);
+	}
+
+	/**
+	 * Returns a viewport with the same size and pixel size
+	 * around another center
+	 */
+	public Viewport withCenter(BigDecimal centerRe, BigDecimal centerIm) {
+		return new Viewport(centerRe, centerIm, step, width, height);
+	}
+
+	/**
+	 * Returns a viewport with the same size and pixel size moved
+	 * by some pixels
+	 *
+	 * @param dx Number of columns to move (positive: to the right)
+	 * @param dy Number of rows to move (positive: down)
+	 * @return The moved viewport
+	 */
+	public Viewport pan(int dx, int dy) {
+		double[] c = new double[4];
+		DoubleDouble.add(center[0], center[1], dx * step, 0, c, 0);
+		DoubleDouble.add(center[2], center[3], dy * step, 0, c, 2);
+		return new Viewport(c, step, width, height);
+	}
+
+	/**
+	 * Returns a viewport with the same size zoomed around a pixel
+	 * which stays in place
+	 *
+	 * @param x The column of the fixed pixel
+	 * @param y The row of the fixed pixel
+	 * @param factor The new pixel size relative to the current one
+	 * (less than one zooms in)
+	 * @return The zoomed viewport
+	 */
+	public Viewport zoom(double x, double y, double factor) {
+		double[] c = new double[4];
+		DoubleDouble.add(center[0], center[1], getOffsetRe(x) * (1 - factor), 0, c, 0);
+		DoubleDouble.add(center[2], center[3], getOffsetIm(y) * (1 - factor), 0, c, 2);
+		return new Viewport(c, step * factor, width, height);
+	}
+
+	/**
+	 * Returns a viewport of the same area with fewer pixels; every
+	 * pixel of it shows the same point as the pixel of this viewport
+	 * at the multiplied position
+	 *
+	 * @param factor The reduction of the width and height
+	 * @return The reduced viewport
+	 */
+	public Viewport reduce(int factor) {
+		return new Viewport(center, step * factor, width / factor, height / factor);
+	}
+
+	/**
+	 * Returns where another viewport lies in this one
+	 *
+	 * @param other The other viewport
+	 * @return The column and row of this viewport which show the
+	 * first pixel of the other viewport and the size of the pixels of
+	 * the other viewport in pixels of this one
+	 */
+	public double[] locate(Viewport other) {
+		double[] d = new double[4];
+		DoubleDouble.add(other.center[0], other.center[1], -center[0], -center[1], d, 0);
+		DoubleDouble.add(other.center[2], other.center[3], -center[2], -center[3], d, 2);
+		double scale = other.step / step;
+		return new double[] {
+			(d[0] + d[1]) / step - other.width / 2 * scale + width / 2,
+			(d[2] + d[3]) / step - other.height / 2 * scale + height / 2,
+			scale
+		};
+	}
+
+	/**
+	 * Returns the distance of a column to the center
+	 */
+	public double getOffsetRe(double x) {
+		return (x - width / 2) * step;
+	}
+
+	/**
+	 * Returns the distance of a row to the center
+	 */
+	public double getOffsetIm(double y) {
+		return (y - height / 2) * step;
+	}
+
+	/**
+	 * Returns the re part shown by a column (double precision)
+	 */
+	public double getRe(double x) {
+		return center[0] + (center[1] + getOffsetRe(x));
+	}
+
+	/**
+	 * Returns the im part shown by a row (double precision)
+	 */
+	public double getIm(double y) {
+		return center[2] + (center[3] + getOffsetIm(y));
+	}
+
+	/**
+	 * Returns the complex number shown by a pixel with double-double
+	 * precision
+	 *
+	 * @param x The column
+	 * @param y The row
+	 * @param r The result (re hi, re lo, im hi, im lo)
+	 */
+	public void getPoint(double x, double y, double[] r) {
+		DoubleDouble.add(center[0], center[1], getOffsetRe(x), 0, r, 0);
+		DoubleDouble.add(center[2], center[3], getOffsetIm(y), 0, r, 2);
+	}
+
+	/**
+	 * Finds the columns of this viewport which show the same re
+	 * part as the columns of another viewport
+	 *
+	 * @param other The other viewport
+	 * @return For every column of the other viewport the column
+	 * of this viewport or <code>-1</code> if there is none
+	 */
+	public int[] mapColumns(Viewport other) {
+		return map(other.center[0], other.center[1], other.step, other.width,
+				center[0], center[1], width);
+	}
+
+	/**
+	 * Finds the rows of this viewport which show the same im
+	 * part as the rows of another viewport
+	 *
+	 * @param other The other viewport
+	 * @return For every row of the other viewport the row of
+	 * this viewport or <code>-1</code> if there is none
+	 */
+	public int[] mapRows(Viewport other) {
+		return map(other.center[2], other.center[3], other.step, other.height,
+				center[2], center[3], height);
+	}
+
+	/**
+	 * Finds the rows which show the negated im part of each row,
+	 * i.e. the mirror image at the real axis
+	 *
+	 * @return For every row the mirrored row or <code>-1</code> if
+	 * it isn't shown
+	 */
+	public int[] mirrorRows() {
+		return mirror(center[2], center[3], height);
+	}
+
+	/**
+	 * Finds the columns which show the negated re part of each
+	 * column, i.e. the mirror image at the imaginary axis
+	 *
+	 * @return For every column the mirrored column or <code>-1</code>
+	 * if it isn't shown
+	 */
+	public int[] mirrorColumns() {
+		return mirror(center[0], center[1], width);
+	}
+
+	/**
+	 * Mirrors the pixels of one axis at zero
+	 */
+	private int[] mirror(double hi, double lo, int size) {
+		// Pixel i shows hi + lo + (i - size/2) * step, so the pixels
+		// i and c - i show the negated values
+		double u = 2 * (size / 2) - 2 * (hi + lo) / step;
+		long c = Math.round(u);
+
+		int[] map = new int[size];
+		for (int i = 0; i < size; i++) {
+			long k = c - i;
+			map[i] = Math.abs(u - c) < MAP_TOLERANCE && k >= 0 && k < size ? (int) k : -1;
+		}
+		return map;
+	}
+
+	/**
+	 * Maps the pixels of one axis of another viewport to this one
+	 */
+	private int[] map(double otherHi, double otherLo, double otherStep,
+			int otherSize, double hi, double lo, int size) {
+		// The distance of the centers in pixels of this viewport
+		double[] d = new double[2];
+		DoubleDouble.add(otherHi, otherLo, -hi, -lo, d, 0);
+		double shift = (d[0] + d[1]) / step, scale = otherStep / step;
+
+		int[] map = new int[otherSize];
+		for (int i = 0; i < otherSize; i++) {
+			double u = shift + (i - otherSize / 2) * scale + size / 2;
+			long k = Math.round(u);
+			map[i] = Math.abs(u - k) < MAP_TOLERANCE && k >= 0 && k < size ? (int) k : -1;
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the center (re hi, re lo, im hi, im lo)
+	 */
+	public double[] getCenter() {
+		return center.clone();
+	}
+
+	public BigDecimal getCenterRe() {
+		return DoubleDouble.toBigDecimal(center[0], center[1]);
+	}
+
+	public BigDecimal getCenterIm() {
+		return DoubleDouble.toBigDecimal(center[2], center[3]);
+	}
+
+	/**
+	 * Returns the magnitude of the numbers shown (at least 1): the
+	 * precision needed depends on the pixel size relative to this
+	 */
+	public double getScale() {
+		return Math.max(1, Math.abs(center[0]) + Math.abs(center[2]));
+	}
+
+	public double getStep() {
+		return step;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Converts a center into double-double numbers
+	 */
+	private static double[] toDD(BigDecimal re, BigDecimal im) {
+		double[] c = new double[4];
+		DoubleDouble.valueOf(re, c, 0);
+		DoubleDouble.valueOf(im, c, 2);
+		return c;
+	}
+
+}